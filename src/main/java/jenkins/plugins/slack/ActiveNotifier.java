@@ -9,33 +9,26 @@ import hudson.model.AbstractBuild;
 import hudson.model.AbstractProject;
 import hudson.model.Cause;
 import hudson.model.CauseAction;
-import hudson.model.User;
 import hudson.model.Hudson;
-import hudson.model.Run;
-import hudson.scm.ChangeLogSet;
-import hudson.scm.ChangeLogSet.AffectedFile;
 import hudson.scm.ChangeLogSet.Entry;
 import hudson.tasks.test.AbstractTestResultAction;
 import hudson.triggers.SCMTrigger;
-import hudson.util.LogTaskListener;
-import org.apache.commons.lang.ObjectUtils;
 import org.apache.commons.lang.StringUtils;
 
-import java.io.IOException;
+import java.util.ArrayList;
 import java.util.HashSet;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.Set;
 import java.util.logging.Logger;
 
-import static java.util.logging.Level.INFO;
-import static java.util.logging.Level.SEVERE;
-
 @SuppressWarnings("rawtypes")
 public class ActiveNotifier implements FineGrainedNotifier {
 
     private static final Logger logger = Logger.getLogger(SlackListener.class.getName());
 
+    // how many upstream causes are followed looking for changes
+    static final int MAX_UPSTREAM_DEPTH = 10;
+
     SlackNotifier notifier;
     BuildListener listener;
 
@@ -45,43 +38,29 @@ public class ActiveNotifier implements FineGrainedNotifier {
         this.listener = listener;
     }
 
-    private SlackService getSlack(AbstractBuild r) {
-        AbstractProject<?, ?> project = r.getProject();
-        String projectRoom = Util.fixEmpty(project.getProperty(SlackNotifier.SlackJobProperty.class).getRoom());
-        String teamDomain = Util.fixEmpty(project.getProperty(SlackNotifier.SlackJobProperty.class).getTeamDomain());
-        String token = Util.fixEmpty(project.getProperty(SlackNotifier.SlackJobProperty.class).getToken());
-        String directMessage = Util.fixEmpty(project.getProperty(SlackNotifier.SlackJobProperty.class).getSendDirectMessage());
+    /**
+     * Resolves where notifications for this build go. Returns null if the build should only direct message the user
+     * who triggered it, but that user has no Slack username.
+     */
+    SlackRoute getRoute(NotificationContext context) {
+        // The job configuration, or if unset the global configuration, comes from the cache
+        SlackRouteCache.Template template = SlackRouteCache.get().getTemplate(context.getBuild().getProject(), notifier);
+        String directMessage = template.getDirectMessage();
 
-        EnvVars env = new EnvVars();
-        try {
-            env = r.getEnvironment(listener);
-        } catch (Exception e) {
-            listener.getLogger().println("Error retrieving environment vars: " + e.getMessage());
-        }
-        // Get the job configuration here, or if null, defer to the global configuration
-        teamDomain = ObjectUtils.defaultIfNull(env.expand(teamDomain), notifier.getTeamDomain()).toString();
-        token = ObjectUtils.defaultIfNull(env.expand(token), notifier.getAuthToken()).toString();
-        projectRoom = ObjectUtils.defaultIfNull(env.expand(projectRoom), notifier.getRoom()).toString();
-
-        // Support for direct messaging. These steps can be null if the build was a downstream trigger, which is okay
-        String slackUsername = "";
-        Cause.UserIdCause cause = (Cause.UserIdCause) r.getCause(Cause.UserIdCause.class);
-        if (cause != null) {
-            User user = User.get(cause.getUserId());
-            if (user != null) {
-                SlackNotifier.SlackUserProperty property = user.getProperty(SlackNotifier.SlackUserProperty.class);
-                if (property != null) {
-                    slackUsername = property.getUsername();
-                }
-            }
-        }
+        EnvVars env = template.needsEnvironment() ? context.getEnvironment() : null;
+        String teamDomain = template.getTeamDomain(env);
+        String token = template.getToken(env);
+        String projectRoom = template.getRoom(env);
+
+        // Support for direct messaging
+        String slackUsername = template.sendsDirectMessage() ? context.getSlackUsername() : "";
 
         // Make a note if the build is trying to send direct messages but can't - but otherwise continue as normal
         if ((directMessage.equals("user") || directMessage.equals("both")) && slackUsername.isEmpty()) {
             logger.severe("The build is set to send direct messages, but no username was found (triggered?)");
-            // If we're *only* sending direct messages, stub in an empty slack service
+            // If we're *only* sending direct messages, there is nowhere to send to
             if (directMessage.equals("user")) {
-                return new StubSlackService();
+                return null;
             }
         }
 
@@ -95,7 +74,7 @@ public class ActiveNotifier implements FineGrainedNotifier {
 
         logger.finer(String.format("Slack user: %s, Slack directMessage: %s, Slack room(s): %s", slackUsername, directMessage, projectRoom));
 
-        return new StandardSlackService(teamDomain, token, projectRoom);
+        return new SlackRoute(teamDomain, token, projectRoom);
     }
 
     public void deleted(AbstractBuild r) {
@@ -105,38 +84,70 @@ public class ActiveNotifier implements FineGrainedNotifier {
         
         AbstractProject<?, ?> project = build.getProject();
         SlackNotifier.SlackJobProperty jobProperty = project.getProperty(SlackNotifier.SlackJobProperty.class);
+        NotificationContext context = new NotificationContext(build, listener);
 
         CauseAction causeAction = build.getAction(CauseAction.class);
 
         if (causeAction != null) {
             Cause scmCause = causeAction.findCause(SCMTrigger.SCMTriggerCause.class);
             if (scmCause == null) {
-                MessageBuilder message = new MessageBuilder(notifier, build);
+                MessageBuilder message = new MessageBuilder(notifier, context);
                 message.append(causeAction.getShortDescription());
-                notifyStart(build, message.appendOpenLink().toString());
+                notifyStart(context, jobProperty, message.appendOpenLink().toString());
                 // If we've sent a notification here, there's no need to continue and try to send another
                 return;
             }
         }
 
-        String changes = getChanges(build);
+        String changes = getChanges(context);
         if (changes != null) {
-            notifyStart(build, changes);
+            notifyStart(context, jobProperty, changes);
         } else {
-            notifyStart(build, getBuildStatusMessage(build, false, jobProperty.includeCustomMessage()));
+            notifyStart(context, jobProperty, getBuildStatusMessage(context, false, jobProperty.includeCustomMessage()));
         }
     }
 
-    private void notifyStart(AbstractBuild build, String message) {
-        AbstractProject<?, ?> project = build.getProject();
-        AbstractBuild<?, ?> previousBuild = project.getLastBuild().getPreviousCompletedBuild();
-        if (previousBuild == null) {
-            getSlack(build).publish(message, "good");
+    private void notifyStart(NotificationContext context, SlackNotifier.SlackJobProperty jobProperty, String message) {
+        Result previousResult = BuildOutcomeIndex.get().getPreviousResult(context.getBuild(), false);
+        boolean batched = jobProperty != null
+                && (getDigestWindow(jobProperty) > 0 || notifier.getSuppressWindow() > 0);
+        if (previousResult == null) {
+            dispatch(context, composeStarted(message, "good", getBuildKey(context.getBuild()), batched));
         } else {
-            getSlack(build).publish(message, getBuildColor(previousBuild));
+            dispatch(context, composeStarted(message, getColor(previousResult), getBuildKey(context.getBuild()),
+                    batched));
+        }
+    }
+
+    /**
+     * Messages are composed here, on the build thread, but delivered by the {@link SlackDispatcher} workers.
+     */
+    private void dispatch(NotificationContext context, SlackMessage message) {
+        SlackRoute route = getRoute(context);
+        if (route != null) {
+            SlackDispatcher.get().dispatch(route, message);
         }
     }
 
+    /**
+     * The start notice, marked so that the Web API can replace it with the completion notice. A job whose completion
+     * may be summarised in a digest or held back by the suppression window gets a plain post instead, since no
+     * completion notice may come to replace it and it would be left saying the build is starting.
+     *
+     * @param batched whether the completion of the build may be digested or suppressed
+     */
+    static SlackMessage composeStarted(String message, String color, String build, boolean batched) {
+        SlackMessage started = SlackMessage.of(message, color);
+        return batched ? started : started.startOf(build);
+    }
+
+    /**
+     * Identifies a build across its start and completion notices.
+     */
+    static String getBuildKey(AbstractBuild r) {
+        return r.getProject().getFullName() + '#' + r.getNumber();
+    }
+
     public void finalized(AbstractBuild r) {
     }
 
@@ -148,11 +159,10 @@ public class ActiveNotifier implements FineGrainedNotifier {
             return;
         }
         Result result = r.getResult();
-        AbstractBuild<?, ?> previousBuild = project.getLastBuild();
-        do {
-            previousBuild = previousBuild.getPreviousCompletedBuild();
-        } while (previousBuild != null && previousBuild.getResult() == Result.ABORTED);
-        Result previousResult = (previousBuild != null) ? previousBuild.getResult() : Result.SUCCESS;
+        Result previousResult = BuildOutcomeIndex.get().getPreviousResult(r, true);
+        if (previousResult == null) {
+            previousResult = Result.SUCCESS;
+        }
         if ((result == Result.ABORTED && jobProperty.getNotifyAborted())
                 || (result == Result.FAILURE
                 && (previousResult != Result.FAILURE || jobProperty.getNotifyRepeatedFailure())
@@ -163,81 +173,258 @@ public class ActiveNotifier implements FineGrainedNotifier {
                 && jobProperty.getNotifyBackToNormal())
                 || (result == Result.SUCCESS && jobProperty.getNotifySuccess())
                 || (result == Result.UNSTABLE && jobProperty.getNotifyUnstable())) {
-            getSlack(r).publish(getBuildStatusMessage(r, jobProperty.includeTestSummary(),
-                            jobProperty.includeCustomMessage()),
-                    getBuildColor(r));
-            if (jobProperty.getShowCommitList()) {
-                getSlack(r).publish(getCommitList(r), getBuildColor(r));
+            NotificationContext context = new NotificationContext(r, listener);
+            SlackRoute route = getRoute(context);
+            if (route == null) {
+                return;
+            }
+            int digestWindow = getDigestWindow(jobProperty);
+            if (digestWindow > 0 && result == Result.SUCCESS && previousResult == Result.SUCCESS) {
+                // Routine successes are summarised; anything that changes the picture still goes out right away
+                SlackDigest.get().add(route, digestWindow, notifier.getDigestMaxEvents(), getBuildLink(r));
+                return;
+            }
+            int suppressWindow = notifier.getSuppressWindow();
+            if (suppressWindow > 0) {
+                dispatchUnsuppressed(context, jobProperty, route, previousResult, suppressWindow);
+            } else {
+                SlackDispatcher.get().dispatch(route, composeCompleted(context, jobProperty));
+            }
+            if (digestWindow > 0 && result == Result.FAILURE) {
+                SlackDigest.get().recordFailure(route, digestWindow, getBuildLink(r));
             }
         }
     }
 
-    String getChanges(AbstractBuild r) {
-        if (!r.hasChangeSetComputed()) {
-            logger.finer("No change set computed...");
-            return null;
+    /**
+     * Posts the completion notice to each room of the route that has not had the same change of result from this job
+     * within the suppression window, noting what was held back for that room since its last post.
+     */
+    private void dispatchUnsuppressed(NotificationContext context, SlackNotifier.SlackJobProperty jobProperty,
+                                      SlackRoute route, Result previousResult, int windowSeconds) {
+        AbstractBuild r = context.getBuild();
+        String job = r.getProject().getFullName();
+        String transition = previousResult + ">" + r.getResult();
+        String status = MessageBuilder.getStatusMessage(r);
+        SlackSuppressor suppressor = SlackSuppressor.get();
+        long now = System.currentTimeMillis();
+        SlackMessage message = null;
+        for (String room : route.getRooms()) {
+            if (suppressor.suppress(job, room, transition, status, windowSeconds, now)) {
+                logger.fine("Held back Slack notification for " + r + " to " + room + ": " + transition);
+                continue;
+            }
+            if (message == null) {
+                message = composeCompleted(context, jobProperty);
+            }
+            SlackMessage post = message;
+            String summary = suppressor.takeSummary(job, room);
+            if (summary != null) {
+                post = message.copy().attach(MessageBuilder.escape(summary), "warning");
+            }
+            SlackDispatcher.get().dispatch(new SlackRoute(route.getTeamDomain(), route.getToken(), room), post);
         }
-        ChangeLogSet changeSet = r.getChangeSet();
-        List<Entry> entries = new LinkedList<Entry>();
-        Set<AffectedFile> files = new HashSet<AffectedFile>();
-        for (Object o : changeSet.getItems()) {
-            Entry entry = (Entry) o;
-            logger.finer("Entry " + o);
-            entries.add(entry);
-            files.addAll(entry.getAffectedFiles());
+    }
+
+    int getDigestWindow(SlackNotifier.SlackJobProperty jobProperty) {
+        String jobWindow = Util.fixEmpty(jobProperty.getDigestWindow());
+        if (jobWindow == null) {
+            return notifier.getDigestWindow();
+        }
+        try {
+            return Integer.parseInt(jobWindow.trim());
+        } catch (NumberFormatException e) {
+            logger.warning("Invalid Slack digest window '" + jobWindow + "', using the global setting");
+            return notifier.getDigestWindow();
+        }
+    }
+
+    String getBuildLink(AbstractBuild r) {
+        String url = notifier.getBuildServerUrl() + r.getUrl();
+        return "<" + url + "|" + MessageBuilder.escape(r.getProject().getFullDisplayName() + " "
+                + r.getDisplayName()) + ">";
+    }
+
+    /**
+     * Gathers every part of the completion notice into one message, so that the status and the commit list go out
+     * as two attachments of a single post.
+     */
+    SlackMessage composeCompleted(NotificationContext context, SlackNotifier.SlackJobProperty jobProperty) {
+        String status = getBuildStatusMessage(context, jobProperty.includeTestSummary(),
+                jobProperty.includeCustomMessage());
+        String commitList = jobProperty.getShowCommitList() ? getCommitList(context) : null;
+        return composeCompleted(status, commitList, context.getBuild().getResult())
+                .completionOf(getBuildKey(context.getBuild()));
+    }
+
+    /**
+     * @param commitList the commit list, or null if the job does not show it
+     */
+    static SlackMessage composeCompleted(String status, String commitList, Result result) {
+        String color = getColor(result);
+        SlackMessage message = SlackMessage.of(status, color);
+        if (commitList != null) {
+            message.attach(commitList, color);
         }
-        if (entries.isEmpty()) {
+        return message;
+    }
+
+    String getChanges(NotificationContext context) {
+        if (!context.hasChanges()) {
             logger.finer("Empty change...");
             return null;
         }
+        DistinctPathCounter files = new DistinctPathCounter();
         Set<String> authors = new HashSet<String>();
-        for (Entry entry : entries) {
+        for (Entry entry : context.getChanges()) {
+            if (!files.isCapped()) {
+                for (String path : entry.getAffectedPaths()) {
+                    files.add(path);
+                }
+            }
             authors.add(entry.getAuthor().getDisplayName());
         }
-        MessageBuilder message = new MessageBuilder(notifier, r);
+        MessageBuilder message = new MessageBuilder(notifier, context);
         message.append("Started by changes from ");
         message.append(StringUtils.join(authors, ", "));
         message.append(" (");
-        message.append(files.size());
+        message.append(files.format());
         message.append(" file(s) changed)");
         return message.appendOpenLink().toString();
     }
 
-    String getCommitList(AbstractBuild r) {
-        ChangeLogSet changeSet = r.getChangeSet();
-        List<Entry> entries = new LinkedList<Entry>();
-        for (Object o : changeSet.getItems()) {
-            Entry entry = (Entry) o;
-            logger.finer("Entry " + o);
-            entries.add(entry);
+    String getCommitList(NotificationContext context) {
+        String summary = summarizeChanges(context);
+        if (summary == null) {
+            return "No Changes.";
         }
-        if (entries.isEmpty()) {
-            logger.finer("Empty change...");
-            Cause.UpstreamCause c = (Cause.UpstreamCause)r.getCause(Cause.UpstreamCause.class);
-            if (c == null) {
-                return "No Changes.";
-            }
-            String upProjectName = c.getUpstreamProject();
-            int buildNumber = c.getUpstreamBuild();
-            AbstractProject project = Hudson.getInstance().getItemByFullName(upProjectName, AbstractProject.class);
-            AbstractBuild upBuild = (AbstractBuild)project.getBuildByNumber(buildNumber);
-            return getCommitList(upBuild);
-        }
-        Set<String> commits = new HashSet<String>();
-        for (Entry entry : entries) {
-            StringBuffer commit = new StringBuffer();
-            commit.append(entry.getMsg());
-            commit.append(" [").append(entry.getAuthor().getDisplayName()).append("]");
-            commits.add(commit.toString());
-        }
-        MessageBuilder message = new MessageBuilder(notifier, r);
-        message.append("Changes:\n- ");
-        message.append(StringUtils.join(commits, "\n- "));
+        MessageBuilder message = new MessageBuilder(notifier, context);
+        message.append(summary);
         return message.toString();
     }
 
+    /**
+     * Summarises the changes of the build or, if it has none, of the nearest upstream build that has some. Returns
+     * null if there are none within {@link #MAX_UPSTREAM_DEPTH} upstream builds.
+     */
+    private String summarizeChanges(final NotificationContext context) {
+        return new UpstreamWalk<AbstractBuild>(CommitListCache.get()) {
+            @Override
+            String getProject(AbstractBuild build) {
+                return build.getProject().getFullName();
+            }
+
+            @Override
+            int getNumber(AbstractBuild build) {
+                return build.getNumber();
+            }
+
+            @Override
+            String summarize(AbstractBuild build) {
+                NotificationContext current = build == context.getBuild() ? context
+                        : new NotificationContext(build, listener);
+                if (!current.hasChanges()) {
+                    return null;
+                }
+                CommitSummarizer commits = new CommitSummarizer();
+                for (Entry entry : current.getChanges()) {
+                    commits.add(entry.getMsg(), entry.getAuthor().getDisplayName(), entry.getAffectedPaths());
+                }
+                return commits.summarize();
+            }
+
+            @Override
+            AbstractBuild getUpstream(AbstractBuild build) {
+                Cause.UpstreamCause c = (Cause.UpstreamCause)build.getCause(Cause.UpstreamCause.class);
+                return c != null ? getUpstreamBuild(c) : null;
+            }
+        }.walk(context.getBuild());
+    }
+
+    /**
+     * The build an upstream cause points at, or null if its project or the build itself has since been deleted.
+     */
+    AbstractBuild getUpstreamBuild(Cause.UpstreamCause c) {
+        AbstractProject project = Hudson.getInstance().getItemByFullName(c.getUpstreamProject(), AbstractProject.class);
+        if (project == null) {
+            logger.fine("Upstream project " + c.getUpstreamProject() + " no longer exists");
+            return null;
+        }
+        AbstractBuild build = (AbstractBuild)project.getBuildByNumber(c.getUpstreamBuild());
+        if (build == null) {
+            logger.fine("Upstream build " + c.getUpstreamProject() + " #" + c.getUpstreamBuild() + " no longer exists");
+        }
+        return build;
+    }
+
+    /**
+     * Walks up from a build through the builds that triggered it until one has changes, at most
+     * {@link #MAX_UPSTREAM_DEPTH} builds up. The summary found is cached under every build on the way, so that the
+     * other downstream builds of the same upstream build stop as soon as they reach one of them.
+     *
+     * @param <B> the builds walked, which only the subclass looks into
+     */
+    abstract static class UpstreamWalk<B> {
+
+        private final CommitListCache cache;
+
+        UpstreamWalk(CommitListCache cache) {
+            this.cache = cache;
+        }
+
+        abstract String getProject(B build);
+
+        abstract int getNumber(B build);
+
+        /**
+         * The summary of the build's own changes, or null if it has none.
+         */
+        abstract String summarize(B build);
+
+        /**
+         * The build that triggered this one, or null if none did or it no longer exists.
+         */
+        abstract B getUpstream(B build);
+
+        /**
+         * @return the summary, or null if no build within reach has changes
+         */
+        String walk(B build) {
+            List<B> visited = new ArrayList<B>();
+            B first = build;
+            String summary;
+            for (int depth = 0; ; depth++) {
+                summary = cache.get(getProject(build), getNumber(build));
+                if (summary != null) {
+                    break;
+                }
+                visited.add(build);
+                summary = summarize(build);
+                if (summary != null) {
+                    break;
+                }
+                logger.finer("Empty change...");
+                if (depth == MAX_UPSTREAM_DEPTH) {
+                    logger.fine("No changes within " + MAX_UPSTREAM_DEPTH + " upstream builds of " + first);
+                    return null;
+                }
+                build = getUpstream(build);
+                if (build == null) {
+                    return null;
+                }
+            }
+            for (B b : visited) {
+                cache.put(getProject(b), getNumber(b), summary);
+            }
+            return summary;
+        }
+    }
+
     static String getBuildColor(AbstractBuild r) {
-        Result result = r.getResult();
+        return getColor(r.getResult());
+    }
+
+    static String getColor(Result result) {
         if (result == Result.SUCCESS) {
             return "good";
         } else if (result == Result.FAILURE) {
@@ -247,8 +434,8 @@ public class ActiveNotifier implements FineGrainedNotifier {
         }
     }
 
-    String getBuildStatusMessage(AbstractBuild r, boolean includeTestSummary, boolean includeCustomMessage) {
-        MessageBuilder message = new MessageBuilder(notifier, r);
+    String getBuildStatusMessage(NotificationContext context, boolean includeTestSummary, boolean includeCustomMessage) {
+        MessageBuilder message = new MessageBuilder(notifier, context);
         message.appendStatusMessage();
         message.appendDuration();
         message.appendOpenLink();
@@ -263,19 +450,25 @@ public class ActiveNotifier implements FineGrainedNotifier {
 
     public static class MessageBuilder {
 
-        private StringBuffer message;
+        private final StringBuilder message;
         private SlackNotifier notifier;
         private AbstractBuild build;
+        private NotificationContext context;
 
         public MessageBuilder(SlackNotifier notifier, AbstractBuild build) {
+            this(notifier, new NotificationContext(build, null));
+        }
+
+        public MessageBuilder(SlackNotifier notifier, NotificationContext context) {
             this.notifier = notifier;
-            this.message = new StringBuffer();
-            this.build = build;
+            this.message = new StringBuilder();
+            this.build = context.getBuild();
+            this.context = context;
             startMessage();
         }
 
         public MessageBuilder appendStatusMessage() {
-            message.append(this.escape(getStatusMessage(build)));
+            appendEscaped(message, getStatusMessage(build));
             return this;
         }
 
@@ -284,8 +477,10 @@ public class ActiveNotifier implements FineGrainedNotifier {
                 return "Starting...";
             }
             Result result = r.getResult();
-            Run previousBuild = r.getProject().getLastBuild().getPreviousBuild();
-            Result previousResult = (previousBuild != null) ? previousBuild.getResult() : Result.SUCCESS;
+            Result previousResult = BuildOutcomeIndex.get().getPreviousResult(r, false);
+            if (previousResult == null) {
+                previousResult = Result.SUCCESS;
+            }
             if (result == Result.SUCCESS && previousResult == Result.FAILURE) {
                 return "Back to normal";
             }
@@ -311,19 +506,19 @@ public class ActiveNotifier implements FineGrainedNotifier {
         }
 
         public MessageBuilder append(String string) {
-            message.append(this.escape(string));
+            appendEscaped(message, string);
             return this;
         }
 
         public MessageBuilder append(Object string) {
-            message.append(this.escape(string.toString()));
+            appendEscaped(message, string.toString());
             return this;
         }
 
         private MessageBuilder startMessage() {
-            message.append(this.escape(build.getProject().getFullDisplayName()));
+            appendEscaped(message, build.getProject().getFullDisplayName());
             message.append(" - ");
-            message.append(this.escape(build.getDisplayName()));
+            appendEscaped(message, build.getDisplayName());
             message.append(" ");
             return this;
         }
@@ -341,16 +536,15 @@ public class ActiveNotifier implements FineGrainedNotifier {
         }
 
         public MessageBuilder appendTestSummary() {
-            AbstractTestResultAction<?> action = this.build
-                    .getAction(AbstractTestResultAction.class);
+            AbstractTestResultAction<?> action = context.getTestResult();
             if (action != null) {
                 int total = action.getTotalCount();
                 int failed = action.getFailCount();
                 int skipped = action.getSkipCount();
                 message.append("\nTest Status:\n");
-                message.append("\tPassed: " + (total - failed - skipped));
-                message.append(", Failed: " + failed);
-                message.append(", Skipped: " + skipped);
+                message.append("\tPassed: ").append(total - failed - skipped);
+                message.append(", Failed: ").append(failed);
+                message.append(", Skipped: ").append(skipped);
             } else {
                 message.append("\nNo Tests found.");
             }
@@ -359,27 +553,65 @@ public class ActiveNotifier implements FineGrainedNotifier {
 
         public MessageBuilder appendCustomMessage() {
             AbstractProject<?, ?> project = build.getProject();
-            String customMessage = Util.fixEmpty(project.getProperty(SlackNotifier.SlackJobProperty.class)
-                    .getCustomMessage());
-            EnvVars envVars = new EnvVars();
-            try {
-                envVars = build.getEnvironment(new LogTaskListener(logger, INFO));
-            } catch (IOException e) {
-                logger.log(SEVERE, e.getMessage(), e);
-            } catch (InterruptedException e) {
-                logger.log(SEVERE, e.getMessage(), e);
-            }
+            // Parsed once per configuration; only the variables it refers to are looked up
+            CustomMessageTemplate template = project.getProperty(SlackNotifier.SlackJobProperty.class)
+                    .getCustomMessageTemplate();
             message.append("\n");
-            message.append(envVars.expand(customMessage));
+            message.append(template.render(context.getVariables()));
             return this;
         }
 
-        public String escape(String string) {
-            string = string.replace("&", "&amp;");
-            string = string.replace("<", "&lt;");
-            string = string.replace(">", "&gt;");
+        public static String escape(String string) {
+            int i = indexOfSpecial(string);
+            if (i < 0) {
+                // the usual case, nothing to escape and nothing to copy
+                return string;
+            }
+            StringBuilder escaped = new StringBuilder(string.length() + 16);
+            escaped.append(string, 0, i);
+            return appendEscaped(escaped, string, i).toString();
+        }
+
+        /**
+         * Appends the string with Slack's control characters escaped, in a single pass and without an intermediate
+         * copy.
+         */
+        public static StringBuilder appendEscaped(StringBuilder out, String string) {
+            return appendEscaped(out, string, 0);
+        }
 
-            return string;
+        private static StringBuilder appendEscaped(StringBuilder out, String string, int from) {
+            int length = string.length();
+            int start = from;
+            for (int i = from; i < length; i++) {
+                String entity;
+                switch (string.charAt(i)) {
+                    case '&':
+                        entity = "&amp;";
+                        break;
+                    case '<':
+                        entity = "&lt;";
+                        break;
+                    case '>':
+                        entity = "&gt;";
+                        break;
+                    default:
+                        continue;
+                }
+                out.append(string, start, i).append(entity);
+                start = i + 1;
+            }
+            return out.append(string, start, length);
+        }
+
+        private static int indexOfSpecial(String string) {
+            for (int i = 0; i < string.length(); i++) {
+                char c = string.charAt(i);
+                if (c == '&' || c == '<' || c == '>') {
+                    return i;
+                }
+            }
+            return -1;
         }
 
         public String toString() {
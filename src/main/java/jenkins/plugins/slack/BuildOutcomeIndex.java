@@ -0,0 +1,189 @@
+package jenkins.plugins.slack;
+
+import hudson.Extension;
+import hudson.model.Job;
+import hudson.model.Result;
+import hudson.model.Run;
+import hudson.model.TaskListener;
+import hudson.model.listeners.RunListener;
+
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.WeakHashMap;
+
+/**
+ * Remembers the results of the latest completed builds of each job that has sent a notification, by build number,
+ * so that "what did the previous build do" is answered without loading old builds from disk. Because lookups go by
+ * build number rather than by "last build", the answer stays right when builds of one job finish out of order.
+ * <p>
+ * A job is indexed the first time it is asked about, by walking down from its newest build once; from then on completed
+ * builds are added as they finish. Only the last {@link #WINDOW} builds are kept, and a lookup that needs to go
+ * further back falls back to the walk.
+ */
+public class BuildOutcomeIndex {
+
+    static final int WINDOW = 64;
+
+    private static BuildOutcomeIndex instance;
+
+    // keyed weakly by job so that deleted, renamed or reloaded jobs drop out on their own
+    private final Map<Job, JobOutcomes> jobs = Collections.synchronizedMap(new WeakHashMap<Job, JobOutcomes>());
+
+    public static synchronized BuildOutcomeIndex get() {
+        if (instance == null) {
+            instance = new BuildOutcomeIndex();
+        }
+        return instance;
+    }
+
+    /**
+     * Result of the closest earlier build of the same job that has completed.
+     *
+     * @param skipAborted whether aborted builds are passed over, as if they had not run
+     * @return the result, or null if there is no such build
+     */
+    public Result getPreviousResult(Run<?, ?> run, boolean skipAborted) {
+        JobOutcomes outcomes = getOutcomes(run.getParent());
+        Map.Entry<Integer, Result> found = outcomes.find(run.getNumber(), skipAborted);
+        if (found != null) {
+            return found.getValue();
+        }
+        // Not indexed that far back: walk down from the newest completed build once and remember what was seen, so
+        // that everything from there up is known
+        Job<?, ?> job = run.getParent();
+        List<Run<?, ?>> visited = new ArrayList<Run<?, ?>>();
+        Run<?, ?> previous = null;
+        for (Run<?, ?> cursor = job.getLastCompletedBuild(); cursor != null; cursor = cursor.getPreviousCompletedBuild()) {
+            visited.add(cursor);
+            if (cursor.getNumber() < run.getNumber() && (!skipAborted || cursor.getResult() != Result.ABORTED)) {
+                previous = cursor;
+                break;
+            }
+        }
+        int[] numbers = new int[visited.size()];
+        Result[] results = new Result[visited.size()];
+        for (int i = 0; i < numbers.length; i++) {
+            numbers[i] = visited.get(i).getNumber();
+            results[i] = visited.get(i).getResult();
+        }
+        outcomes.seed(numbers, results, previous == null);
+        return previous != null ? previous.getResult() : null;
+    }
+
+    /**
+     * Adds a completed build, if its job is indexed.
+     */
+    public void record(Run<?, ?> run) {
+        JobOutcomes outcomes = jobs.get(run.getParent());
+        if (outcomes != null && run.getResult() != null) {
+            outcomes.record(run.getNumber(), run.getResult());
+        }
+    }
+
+    public void remove(Run<?, ?> run) {
+        JobOutcomes outcomes = jobs.get(run.getParent());
+        if (outcomes != null) {
+            outcomes.remove(run.getNumber());
+        }
+    }
+
+    private JobOutcomes getOutcomes(Job job) {
+        synchronized (jobs) {
+            JobOutcomes outcomes = jobs.get(job);
+            if (outcomes == null) {
+                outcomes = new JobOutcomes();
+                jobs.put(job, outcomes);
+            }
+            return outcomes;
+        }
+    }
+
+    /**
+     * Results of the recent completed builds of one job. Every build numbered {@code coveredFrom} or higher that had
+     * completed is in {@code results}; below that nothing is known.
+     */
+    static class JobOutcomes {
+
+        // returned when the index knows there is no earlier build at all
+        static final Map.Entry<Integer, Result> NONE = new AbstractMap.SimpleImmutableEntry<Integer, Result>(0, null);
+
+        private final TreeMap<Integer, Result> results = new TreeMap<Integer, Result>();
+        private int coveredFrom = Integer.MAX_VALUE;
+
+        /**
+         * @return the closest earlier build, {@link #NONE} if there is none, or null if the index cannot tell
+         */
+        synchronized Map.Entry<Integer, Result> find(int number, boolean skipAborted) {
+            if (number < coveredFrom) {
+                return null;
+            }
+            Map.Entry<Integer, Result> entry = results.lowerEntry(number);
+            while (entry != null && entry.getKey() >= coveredFrom) {
+                if (!skipAborted || entry.getValue() != Result.ABORTED) {
+                    return entry;
+                }
+                entry = results.lowerEntry(entry.getKey());
+            }
+            return coveredFrom == 0 ? NONE : null;
+        }
+
+        synchronized void record(int number, Result result) {
+            results.put(number, result);
+            trim();
+        }
+
+        synchronized void remove(int number) {
+            results.remove(number);
+        }
+
+        /**
+         * Stores what a walk down from the newest completed build found: every completed build it passed, newest
+         * first.
+         *
+         * @param reachedStart whether the walk ran out of builds, i.e. nothing older exists
+         */
+        synchronized void seed(int[] numbers, Result[] results, boolean reachedStart) {
+            for (int i = 0; i < numbers.length; i++) {
+                this.results.put(numbers[i], results[i]);
+            }
+            if (reachedStart) {
+                coveredFrom = 0;
+            } else if (numbers.length > 0) {
+                coveredFrom = Math.min(coveredFrom, numbers[numbers.length - 1]);
+            }
+            trim();
+        }
+
+        private void trim() {
+            while (results.size() > WINDOW) {
+                results.pollFirstEntry();
+                coveredFrom = Math.max(coveredFrom, results.firstKey());
+            }
+        }
+    }
+
+    /**
+     * Keeps indexed jobs up to date as their builds complete or are deleted.
+     */
+    @Extension
+    public static class Recorder extends RunListener<Run> {
+
+        public Recorder() {
+            super(Run.class);
+        }
+
+        @Override
+        public void onCompleted(Run r, TaskListener listener) {
+            get().record(r);
+        }
+
+        @Override
+        public void onDeleted(Run r) {
+            get().remove(r);
+        }
+    }
+}
@@ -0,0 +1,45 @@
+package jenkins.plugins.slack;
+
+import hudson.EnvVars;
+import hudson.model.AbstractBuild;
+import hudson.model.TaskListener;
+import hudson.util.VariableResolver;
+
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Resolves variables of one build from its full build environment, the same values a build step sees: environment
+ * contributors and build wrappers override build parameters. The environment, which runs every environment
+ * contributor, is computed the first time a variable is asked for and then reused, so a message without variables
+ * never computes it.
+ */
+public class BuildVariableResolver implements VariableResolver<String> {
+
+    private static final Logger logger = Logger.getLogger(BuildVariableResolver.class.getName());
+
+    private final AbstractBuild<?, ?> build;
+    private final TaskListener listener;
+    private EnvVars environment;
+
+    public BuildVariableResolver(AbstractBuild<?, ?> build, TaskListener listener) {
+        this.build = build;
+        this.listener = listener;
+    }
+
+    public String resolve(String name) {
+        return getEnvironment().get(name);
+    }
+
+    EnvVars getEnvironment() {
+        if (environment == null) {
+            try {
+                environment = build.getEnvironment(listener);
+            } catch (Exception e) {
+                logger.log(Level.SEVERE, "Error retrieving environment vars", e);
+                environment = new EnvVars();
+            }
+        }
+        return environment;
+    }
+}
@@ -0,0 +1,202 @@
+package jenkins.plugins.slack;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Runs tasks on a shared pool of threads, in order per key and in parallel across keys. Each key (a channel) has
+ * its own lane: at most one of its tasks runs at a time, in the order they were submitted.
+ * <p>
+ * A task that has to be tried again holds up its lane: it goes back to the front and the lane waits for the retry
+ * delay, so later tasks for the same key never overtake it. Other lanes carry on. A task that throws is logged and
+ * dropped, and its lane goes on with the next one.
+ */
+class ChannelExecutor {
+
+    private static final Logger logger = Logger.getLogger(ChannelExecutor.class.getName());
+
+    // tasks a lane runs before letting other lanes have the thread
+    static final int BATCH = 16;
+
+    abstract static class Task {
+
+        /**
+         * @return how long to wait before running this task again, ahead of the rest of its lane, or a negative
+         *         number if it is done
+         */
+        abstract long run();
+    }
+
+    private static final class Lane {
+
+        private final String key;
+        private final ArrayDeque<Task> tasks = new ArrayDeque<Task>();
+        // a drain is queued or running, or the lane is waiting to retry its first task
+        private boolean active;
+        private boolean waiting;
+
+        Lane(String key) {
+            this.key = key;
+        }
+    }
+
+    private final ThreadPoolExecutor workers;
+    private final ScheduledExecutorService timer;
+    private final Map<String, Lane> lanes = new HashMap<String, Lane>();
+    private int queued;
+    private int capacity;
+    private boolean closed;
+
+    /**
+     * @param timer schedules retries; once it is shut down, lanes waiting to retry stay stopped
+     */
+    ChannelExecutor(int threads, int capacity, ScheduledExecutorService timer) {
+        this.workers = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<Runnable>(), new SlackThreadFactory("Slack dispatcher"));
+        this.capacity = capacity;
+        this.timer = timer;
+    }
+
+    /**
+     * Queues a task at the back of its lane.
+     *
+     * @throws RejectedExecutionException if the executor is shut down or holds its capacity in waiting tasks
+     */
+    void execute(String key, Task task) {
+        Lane start = null;
+        synchronized (this) {
+            if (closed) {
+                throw new RejectedExecutionException("Shut down");
+            }
+            if (queued >= capacity) {
+                throw new RejectedExecutionException("Queue full");
+            }
+            Lane lane = lanes.get(key);
+            if (lane == null) {
+                lane = new Lane(key);
+                lanes.put(key, lane);
+            }
+            lane.tasks.add(task);
+            queued++;
+            if (!lane.active) {
+                lane.active = true;
+                start = lane;
+            }
+        }
+        if (start != null) {
+            schedule(start);
+        }
+    }
+
+    private void schedule(final Lane lane) {
+        try {
+            workers.execute(new Runnable() {
+                public void run() {
+                    drain(lane);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            // shutting down: whoever is draining the other lanes finishes this one too
+            drain(lane);
+        }
+    }
+
+    private void drain(final Lane lane) {
+        for (int i = 0; ; i++) {
+            Task task;
+            synchronized (this) {
+                task = lane.tasks.poll();
+                if (task == null) {
+                    lane.active = false;
+                    lanes.remove(lane.key);
+                    return;
+                }
+                queued--;
+            }
+            long result;
+            try {
+                result = task.run();
+            } catch (Throwable t) {
+                logger.log(Level.SEVERE, "Dropping a task for " + lane.key + " that failed", t);
+                result = -1;
+            }
+            final long delay = result;
+            if (delay >= 0) {
+                synchronized (this) {
+                    lane.tasks.addFirst(task);
+                    queued++;
+                    lane.waiting = true;
+                }
+                try {
+                    timer.schedule(new Runnable() {
+                        public void run() {
+                            synchronized (ChannelExecutor.this) {
+                                lane.waiting = false;
+                            }
+                            schedule(lane);
+                        }
+                    }, delay, TimeUnit.MILLISECONDS);
+                } catch (RejectedExecutionException e) {
+                    // shutting down; the lane stays stopped and its tasks are left to the caller's journal
+                }
+                return;
+            }
+            if (i + 1 == BATCH && !workers.isShutdown()) {
+                schedule(lane);
+                return;
+            }
+        }
+    }
+
+    synchronized void configure(int threads, int capacity) {
+        if (threads > workers.getMaximumPoolSize()) {
+            workers.setMaximumPoolSize(threads);
+            workers.setCorePoolSize(threads);
+        } else {
+            workers.setCorePoolSize(threads);
+            workers.setMaximumPoolSize(threads);
+        }
+        this.capacity = capacity;
+    }
+
+    /**
+     * Tasks waiting to run, including those waiting to be retried.
+     */
+    synchronized int getQueued() {
+        return queued;
+    }
+
+    /**
+     * Lanes held up by a task waiting to be retried.
+     */
+    synchronized int getWaitingLanes() {
+        int waiting = 0;
+        for (Lane lane : lanes.values()) {
+            if (lane.waiting) {
+                waiting++;
+            }
+        }
+        return waiting;
+    }
+
+    /**
+     * Stops accepting tasks and waits for every lane to run dry, apart from lanes waiting to retry a task.
+     *
+     * @return true if they did before the timeout
+     */
+    boolean shutdown(long timeout, TimeUnit unit) throws InterruptedException {
+        synchronized (this) {
+            closed = true;
+        }
+        workers.shutdown();
+        return workers.awaitTermination(timeout, unit);
+    }
+}
@@ -0,0 +1,53 @@
+package jenkins.plugins.slack;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Remembers the commit summary of recent builds, keyed by project and build number, so that the downstream builds
+ * of one upstream build summarise its change set once between them. A build's change set does not change once it is
+ * computed, so entries never go stale; the least recently used ones are dropped once the cache is full.
+ */
+public class CommitListCache {
+
+    static final int DEFAULT_CAPACITY = 256;
+
+    private static CommitListCache instance;
+
+    private final Map<String, String> summaries;
+
+    public static synchronized CommitListCache get() {
+        if (instance == null) {
+            instance = new CommitListCache(DEFAULT_CAPACITY);
+        }
+        return instance;
+    }
+
+    CommitListCache(final int capacity) {
+        summaries = new LinkedHashMap<String, String>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+                return size() > capacity;
+            }
+        };
+    }
+
+    /**
+     * The summary of a build's changes, or null if it is not cached.
+     */
+    public synchronized String get(String project, int build) {
+        return summaries.get(key(project, build));
+    }
+
+    public synchronized void put(String project, int build, String summary) {
+        summaries.put(key(project, build), summary);
+    }
+
+    synchronized int size() {
+        return summaries.size();
+    }
+
+    private static String key(String project, int build) {
+        return project + '#' + build;
+    }
+}
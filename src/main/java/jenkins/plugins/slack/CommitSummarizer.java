@@ -0,0 +1,137 @@
+package jenkins.plugins.slack;
+
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Summarises a change set of any size in bounded memory. Commits are fed one at a time, in change set order; only
+ * the first few are kept, in order, with repeated lines collapsed, and the rest are counted. The summary
+ * ends with how many were left out, e.g. "...and 4,900 more", and how many distinct files the change set touches,
+ * counted by a {@link DistinctPathCounter} as the start notice counts them.
+ */
+public class CommitSummarizer {
+
+    static final int DEFAULT_MAX_COMMITS = 20;
+    // longer commit lines are cut, so a single huge message cannot blow up the post
+    static final int MAX_LINE_LENGTH = 200;
+    // authors beyond this are still counted as commits, but not told apart
+    static final int MAX_TRACKED_AUTHORS = 500;
+
+    private final int maxCommits;
+    // kept lines in order, with how many commits each stands for
+    private final LinkedHashMap<String, int[]> lines = new LinkedHashMap<String, int[]>();
+    private final Set<String> authors = new HashSet<String>();
+    private boolean authorsOverflowed;
+    private int commits;
+    private int omitted;
+    private final DistinctPathCounter files = new DistinctPathCounter();
+
+    public CommitSummarizer(int maxCommits) {
+        this.maxCommits = Math.max(1, maxCommits);
+    }
+
+    public CommitSummarizer() {
+        this(DEFAULT_MAX_COMMITS);
+    }
+
+    /**
+     * @param paths the files the commit touched
+     */
+    public void add(String message, String author, Collection<String> paths) {
+        commits++;
+        if (!files.isCapped()) {
+            for (String path : paths) {
+                files.add(path);
+            }
+        }
+        if (author != null && !authorsOverflowed && authors.add(author) && authors.size() >= MAX_TRACKED_AUTHORS) {
+            authorsOverflowed = true;
+        }
+        String line = truncate(message) + " [" + author + "]";
+        int[] count = lines.get(line);
+        if (count != null) {
+            count[0]++;
+            return;
+        }
+        if (lines.size() < maxCommits) {
+            lines.put(line, new int[]{1});
+        } else {
+            omitted++;
+        }
+    }
+
+    private static String truncate(String message) {
+        if (message == null) {
+            return "";
+        }
+        message = message.trim();
+        int newline = message.indexOf('\n');
+        if (newline >= 0) {
+            // only the subject line of a multi-line message
+            message = message.substring(0, newline).trim();
+        }
+        return message.length() > MAX_LINE_LENGTH ? message.substring(0, MAX_LINE_LENGTH - 3) + "..." : message;
+    }
+
+    public boolean isEmpty() {
+        return commits == 0;
+    }
+
+    public int getCommits() {
+        return commits;
+    }
+
+    /**
+     * Number of distinct authors, up to {@link #MAX_TRACKED_AUTHORS}.
+     */
+    public int getAuthors() {
+        return authors.size();
+    }
+
+    /**
+     * Number of distinct files touched, as {@link DistinctPathCounter#getCount()} counts them.
+     */
+    public int getFiles() {
+        return files.getCount();
+    }
+
+    /**
+     * Number of commits that are not shown.
+     */
+    public int getOmitted() {
+        return omitted;
+    }
+
+    /**
+     * Plain text, not yet escaped for Slack.
+     */
+    public String summarize() {
+        StringBuilder out = new StringBuilder("Changes:");
+        for (Map.Entry<String, int[]> line : lines.entrySet()) {
+            out.append("\n- ").append(line.getKey());
+            if (line.getValue()[0] > 1) {
+                out.append(" (x").append(line.getValue()[0]).append(')');
+            }
+        }
+        if (omitted > 0) {
+            out.append("\n...and ").append(format(omitted)).append(" more");
+            out.append(" (").append(format(commits)).append(" commits by ").append(format(authors.size()))
+                    .append(authorsOverflowed ? "+" : "").append(authors.size() == 1 ? " author" : " authors")
+                    .append(", ").append(files.format()).append(files.getCount() == 1 ? " file)" : " files)");
+        }
+        return out.toString();
+    }
+
+    private static String format(long n) {
+        return String.format(Locale.ENGLISH, "%,d", n);
+    }
+
+    @Override
+    public String toString() {
+        return summarize();
+    }
+}
@@ -0,0 +1,125 @@
+package jenkins.plugins.slack;
+
+import hudson.util.VariableResolver;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * A custom message split once into literal text and variable references, so that rendering it only looks up the
+ * variables it actually uses. The syntax is that of {@link hudson.Util#replaceMacro}: {@code $NAME},
+ * {@code ${NAME}} and {@code $$} for a literal dollar sign. A variable that cannot be resolved is left as written.
+ */
+public class CustomMessageTemplate {
+
+    private static final CustomMessageTemplate EMPTY = new CustomMessageTemplate(new String[]{""},
+            new String[0], new String[0]);
+
+    // literals[i] is followed by variable i; there is one more literal than there are variables
+    private final String[] literals;
+    private final String[] names;
+    // how each variable was written, used when it cannot be resolved
+    private final String[] sources;
+
+    private CustomMessageTemplate(String[] literals, String[] names, String[] sources) {
+        this.literals = literals;
+        this.names = names;
+        this.sources = sources;
+    }
+
+    public static CustomMessageTemplate compile(String text) {
+        if (text == null || text.length() == 0) {
+            return EMPTY;
+        }
+        List<String> literals = new ArrayList<String>();
+        List<String> names = new ArrayList<String>();
+        List<String> sources = new ArrayList<String>();
+        StringBuilder literal = new StringBuilder();
+        int length = text.length();
+        int i = 0;
+        while (i < length) {
+            char c = text.charAt(i);
+            if (c != '$' || i + 1 == length) {
+                literal.append(c);
+                i++;
+                continue;
+            }
+            char next = text.charAt(i + 1);
+            int end;
+            String name;
+            if (next == '$') {
+                literal.append('$');
+                i += 2;
+                continue;
+            } else if (next == '{') {
+                end = scan(text, i + 2, true);
+                if (end == i + 2 || end == length || text.charAt(end) != '}') {
+                    literal.append(c);
+                    i++;
+                    continue;
+                }
+                name = text.substring(i + 2, end);
+                end++;
+            } else {
+                end = scan(text, i + 1, false);
+                if (end == i + 1) {
+                    literal.append(c);
+                    i++;
+                    continue;
+                }
+                name = text.substring(i + 1, end);
+            }
+            literals.add(literal.toString());
+            literal.setLength(0);
+            names.add(name);
+            sources.add(text.substring(i, end));
+            i = end;
+        }
+        literals.add(literal.toString());
+        return new CustomMessageTemplate(literals.toArray(new String[literals.size()]),
+                names.toArray(new String[names.size()]), sources.toArray(new String[sources.size()]));
+    }
+
+    private static int scan(String text, int from, boolean braced) {
+        int i = from;
+        while (i < text.length()) {
+            char c = text.charAt(i);
+            if ((c >= 'A' && c <= 'Z') || (c >= 'a' && c <= 'z') || (c >= '0' && c <= '9') || c == '_'
+                    || (braced && c == '.')) {
+                i++;
+            } else {
+                break;
+            }
+        }
+        return i;
+    }
+
+    /**
+     * The names of the variables the template refers to, in order of first use.
+     */
+    public Set<String> getVariables() {
+        Set<String> variables = new LinkedHashSet<String>();
+        Collections.addAll(variables, names);
+        return variables;
+    }
+
+    public boolean hasVariables() {
+        return names.length > 0;
+    }
+
+    public String render(VariableResolver<String> resolver) {
+        if (names.length == 0) {
+            return literals[0];
+        }
+        StringBuilder out = new StringBuilder();
+        for (int i = 0; i < names.length; i++) {
+            out.append(literals[i]);
+            String value = resolver.resolve(names[i]);
+            out.append(value != null ? value : sources[i]);
+        }
+        return out.append(literals[names.length]).toString();
+    }
+}
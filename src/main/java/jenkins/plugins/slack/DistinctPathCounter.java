@@ -0,0 +1,154 @@
+package jenkins.plugins.slack;
+
+import java.util.Locale;
+
+/**
+ * Counts the distinct paths a change set touches without keeping the paths. Each path is reduced to a 64-bit hash
+ * held in an open-addressing {@code long[]}; past {@link #EXACT_LIMIT} distinct paths the hashes are folded into a
+ * HyperLogLog sketch of {@value #REGISTERS} registers, which estimates the count to within a few percent. After
+ * {@link #MAX_PATHS} paths the counter stops looking, so the work per change set is bounded too.
+ */
+public class DistinctPathCounter {
+
+    static final int EXACT_LIMIT = 4096;
+    static final int MAX_PATHS = 100000;
+    // 2^11 registers, a standard error of about 2.3%
+    private static final int PRECISION = 11;
+    static final int REGISTERS = 1 << PRECISION;
+
+    // hash 0 marks a free slot, so a path hashing to 0 is stored as 1
+    private long[] table = new long[64];
+    private int size;
+    private byte[] registers;
+    private int seen;
+    private boolean capped;
+
+    public void add(String path) {
+        if (path == null || capped) {
+            return;
+        }
+        if (seen == MAX_PATHS) {
+            capped = true;
+            return;
+        }
+        seen++;
+        long hash = hash(path);
+        if (registers != null) {
+            offer(hash);
+        } else if (insert(hash) && size > EXACT_LIMIT) {
+            registers = new byte[REGISTERS];
+            for (long h : table) {
+                if (h != 0) {
+                    offer(h);
+                }
+            }
+            table = null;
+        }
+    }
+
+    private boolean insert(long hash) {
+        if (hash == 0) {
+            hash = 1;
+        }
+        int mask = table.length - 1;
+        int i = (int) hash & mask;
+        while (table[i] != 0) {
+            if (table[i] == hash) {
+                return false;
+            }
+            i = (i + 1) & mask;
+        }
+        table[i] = hash;
+        if (++size * 2 > table.length) {
+            grow();
+        }
+        return true;
+    }
+
+    private void grow() {
+        long[] old = table;
+        table = new long[old.length * 2];
+        int mask = table.length - 1;
+        for (long h : old) {
+            if (h != 0) {
+                int i = (int) h & mask;
+                while (table[i] != 0) {
+                    i = (i + 1) & mask;
+                }
+                table[i] = h;
+            }
+        }
+    }
+
+    private void offer(long hash) {
+        int index = (int) (hash >>> (64 - PRECISION));
+        // the leading bit set below the index bits, counting from 1; the sentinel bit caps it
+        int rank = Long.numberOfLeadingZeros((hash << PRECISION) | (1L << (PRECISION - 1))) + 1;
+        if (rank > registers[index]) {
+            registers[index] = (byte) rank;
+        }
+    }
+
+    /**
+     * The number of distinct paths added, exact unless {@link #isExact()} says otherwise.
+     */
+    public int getCount() {
+        if (registers == null) {
+            return size;
+        }
+        double sum = 0;
+        int zeros = 0;
+        for (byte r : registers) {
+            sum += 1.0 / (1L << r);
+            if (r == 0) {
+                zeros++;
+            }
+        }
+        double m = REGISTERS;
+        double estimate = 0.7213 / (1 + 1.079 / m) * m * m / sum;
+        if (estimate <= 2.5 * m && zeros > 0) {
+            estimate = m * Math.log(m / zeros);
+        }
+        return (int) Math.round(estimate);
+    }
+
+    /**
+     * Whether {@link #getCount()} is an exact count of every path added.
+     */
+    public boolean isExact() {
+        return registers == null && !isCapped();
+    }
+
+    /**
+     * Whether more paths were offered than are looked at, so that the count is a lower bound.
+     */
+    public boolean isCapped() {
+        return capped;
+    }
+
+    /**
+     * The count for people to read, saying whether it is exact: "1,234", "about 5,100" or "at least 98,000".
+     */
+    public String format() {
+        String count = String.format(Locale.ENGLISH, "%,d", getCount());
+        if (isCapped()) {
+            return "at least " + count;
+        }
+        return isExact() ? count : "about " + count;
+    }
+
+    // 64-bit FNV-1a over the UTF-16 code units, finished with the MurmurHash3 mixer so the high bits are usable
+    static long hash(String path) {
+        long h = 0xcbf29ce484222325L;
+        for (int i = 0; i < path.length(); i++) {
+            h ^= path.charAt(i);
+            h *= 0x100000001b3L;
+        }
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+}
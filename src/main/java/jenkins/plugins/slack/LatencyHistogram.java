@@ -0,0 +1,81 @@
+package jenkins.plugins.slack;
+
+import org.json.JSONObject;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Durations in milliseconds, counted in fixed buckets from 5ms to an hour. Recording is lock-free; percentiles are
+ * read off the buckets, so they are the upper bound of the bucket the percentile falls in.
+ */
+public class LatencyHistogram {
+
+    static final long[] BOUNDS = {5, 10, 25, 50, 100, 250, 500, 1000, 2500, 5000, 10000, 30000, 60000, 300000,
+            3600000};
+
+    // one more bucket than bounds, for anything over the last bound
+    private final AtomicLongArray buckets = new AtomicLongArray(BOUNDS.length + 1);
+    private final StripedCounter count = new StripedCounter(4);
+    private final StripedCounter sum = new StripedCounter(4);
+
+    public void record(long millis) {
+        if (millis < 0) {
+            millis = 0;
+        }
+        int bucket = 0;
+        while (bucket < BOUNDS.length && millis > BOUNDS[bucket]) {
+            bucket++;
+        }
+        buckets.incrementAndGet(bucket);
+        count.increment();
+        sum.add(millis);
+    }
+
+    public long getCount() {
+        return count.sum();
+    }
+
+    public long getSumMillis() {
+        return sum.sum();
+    }
+
+    /**
+     * The bound of the bucket holding the given fraction of recorded durations, -1 if there are none, or
+     * {@link Long#MAX_VALUE} if it is past the last bucket.
+     */
+    public long getPercentile(double fraction) {
+        long[] counts = new long[buckets.length()];
+        long total = 0;
+        for (int i = 0; i < counts.length; i++) {
+            counts[i] = buckets.get(i);
+            total += counts[i];
+        }
+        if (total == 0) {
+            return -1;
+        }
+        long rank = (long) Math.ceil(fraction * total);
+        long seen = 0;
+        for (int i = 0; i < BOUNDS.length; i++) {
+            seen += counts[i];
+            if (seen >= rank) {
+                return BOUNDS[i];
+            }
+        }
+        return Long.MAX_VALUE;
+    }
+
+    public JSONObject toJSON() {
+        JSONObject buckets = new JSONObject();
+        for (int i = 0; i < BOUNDS.length; i++) {
+            buckets.put("le" + BOUNDS[i], this.buckets.get(i));
+        }
+        buckets.put("inf", this.buckets.get(BOUNDS.length));
+        return new JSONObject()
+                .put("count", getCount())
+                .put("sumMillis", getSumMillis())
+                .put("p50", getPercentile(0.5))
+                .put("p95", getPercentile(0.95))
+                .put("p99", getPercentile(0.99))
+                .put("buckets", buckets);
+    }
+}
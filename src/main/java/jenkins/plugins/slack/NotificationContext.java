@@ -0,0 +1,100 @@
+package jenkins.plugins.slack;
+
+import hudson.EnvVars;
+import hudson.model.AbstractBuild;
+import hudson.model.Cause;
+import hudson.model.TaskListener;
+import hudson.scm.ChangeLogSet;
+import hudson.tasks.test.AbstractTestResultAction;
+import hudson.util.LogTaskListener;
+import hudson.util.VariableResolver;
+
+import java.util.Collections;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Everything a notification needs to know about one build that is costly to work out: the build environment, the
+ * user who triggered it, its changes and its test results. Each is computed at most once, the first time it is
+ * asked for. A context lives for one build event (started or completed) and is dropped once the message is composed.
+ */
+@SuppressWarnings("rawtypes")
+public class NotificationContext {
+
+    private static final Logger logger = Logger.getLogger(NotificationContext.class.getName());
+
+    private final AbstractBuild<?, ?> build;
+    private final BuildVariableResolver variables;
+    private String slackUsername;
+    private AbstractTestResultAction<?> testResult;
+    private boolean testResultLoaded;
+
+    /**
+     * @param listener where problems computing the environment are reported, or null to log them
+     */
+    public NotificationContext(AbstractBuild<?, ?> build, TaskListener listener) {
+        this.build = build;
+        this.variables = new BuildVariableResolver(build,
+                listener != null ? listener : new LogTaskListener(logger, Level.INFO));
+    }
+
+    public AbstractBuild<?, ?> getBuild() {
+        return build;
+    }
+
+    /**
+     * The full build environment, which runs every environment contributor. It is computed once per context.
+     */
+    public EnvVars getEnvironment() {
+        return variables.getEnvironment();
+    }
+
+    /**
+     * Resolves variables from the build environment, computing it only once a variable is asked for.
+     */
+    public VariableResolver<String> getVariables() {
+        return variables;
+    }
+
+    /**
+     * The Slack username of the user who started the build, or an empty string if it was not started by a user or
+     * the user has none. The build may have been triggered by an upstream build or the SCM, which is okay.
+     */
+    public String getSlackUsername() {
+        if (slackUsername == null) {
+            slackUsername = "";
+            Cause.UserIdCause cause = build.getCause(Cause.UserIdCause.class);
+            if (cause != null) {
+                slackUsername = SlackUserCache.get().getUsername(cause.getUserId());
+            }
+        }
+        return slackUsername;
+    }
+
+    /**
+     * The entries of the build's change set, or nothing if the change set has not been computed yet. The entries are
+     * not copied: a change set can hold thousands of commits, so it is walked in place.
+     */
+    public Iterable<? extends ChangeLogSet.Entry> getChanges() {
+        if (!build.hasChangeSetComputed()) {
+            logger.finer("No change set computed...");
+            return Collections.<ChangeLogSet.Entry>emptyList();
+        }
+        return build.getChangeSet();
+    }
+
+    public boolean hasChanges() {
+        return build.hasChangeSetComputed() && !build.getChangeSet().isEmptySet();
+    }
+
+    /**
+     * The build's test results, or null if it has none.
+     */
+    public AbstractTestResultAction<?> getTestResult() {
+        if (!testResultLoaded) {
+            testResult = build.getAction(AbstractTestResultAction.class);
+            testResultLoaded = true;
+        }
+        return testResult;
+    }
+}
@@ -0,0 +1,128 @@
+package jenkins.plugins.slack;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Outcome of a publish call, one {@link RoomResult} per room the message was sent to.
+ */
+public class PublishResult {
+
+    private final List<RoomResult> rooms;
+
+    public PublishResult(List<RoomResult> rooms) {
+        this.rooms = Collections.unmodifiableList(new ArrayList<RoomResult>(rooms));
+    }
+
+    public static PublishResult empty() {
+        return new PublishResult(Collections.<RoomResult>emptyList());
+    }
+
+    public List<RoomResult> getRooms() {
+        return rooms;
+    }
+
+    /**
+     * True only if every room accepted the message.
+     */
+    public boolean isSuccess() {
+        for (RoomResult room : rooms) {
+            if (!room.isSuccess()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public List<RoomResult> getFailures() {
+        List<RoomResult> failures = new ArrayList<RoomResult>();
+        for (RoomResult room : rooms) {
+            if (!room.isSuccess()) {
+                failures.add(room);
+            }
+        }
+        return failures;
+    }
+
+    @Override
+    public String toString() {
+        return rooms.toString();
+    }
+
+    public static class RoomResult {
+
+        private final String room;
+        private final int statusCode;
+        private final String error;
+        private final long retryAfterMillis;
+
+        private RoomResult(String room, int statusCode, String error) {
+            this(room, statusCode, error, -1);
+        }
+
+        private RoomResult(String room, int statusCode, String error, long retryAfterMillis) {
+            this.room = room;
+            this.statusCode = statusCode;
+            this.error = error;
+            this.retryAfterMillis = retryAfterMillis;
+        }
+
+        public static RoomResult delivered(String room, int statusCode) {
+            return new RoomResult(room, statusCode, null);
+        }
+
+        public static RoomResult rejected(String room, int statusCode, String response) {
+            // an error response with no body must still read as a failure
+            return new RoomResult(room, statusCode, response != null ? response : "HTTP " + statusCode);
+        }
+
+        public static RoomResult failed(String room, Throwable cause) {
+            return new RoomResult(room, -1, String.valueOf(cause));
+        }
+
+        /**
+         * The room was not posted to because the webhook is throttled, by Slack or by the rate limiter, and may be
+         * tried again once the delay has passed. Reported as a 429.
+         */
+        public static RoomResult throttled(String room, String response, long retryAfterMillis) {
+            return new RoomResult(room, StandardSlackService.SC_TOO_MANY_REQUESTS,
+                    response != null ? response : "Throttled", Math.max(0, retryAfterMillis));
+        }
+
+        public String getRoom() {
+            return room;
+        }
+
+        /**
+         * HTTP status returned by Slack, or -1 if the request never got a response.
+         */
+        public int getStatusCode() {
+            return statusCode;
+        }
+
+        public String getError() {
+            return error;
+        }
+
+        public boolean isSuccess() {
+            return error == null;
+        }
+
+        public boolean isThrottled() {
+            return retryAfterMillis >= 0;
+        }
+
+        /**
+         * How long to wait before posting to a throttled room again, or -1 if the room was not throttled.
+         */
+        public long getRetryAfterMillis() {
+            return retryAfterMillis;
+        }
+
+        @Override
+        public String toString() {
+            return room + (isSuccess() ? ": ok" : ": " + statusCode + " " + error);
+        }
+    }
+}
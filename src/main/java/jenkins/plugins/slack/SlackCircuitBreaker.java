@@ -0,0 +1,232 @@
+package jenkins.plugins.slack;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+/**
+ * Circuit breaker per webhook (team domain and token). After a run of failures that point at the webhook itself
+ * (timeouts, unreachable host, server errors, rejected token) the circuit opens and posts fail immediately, so
+ * they go to the retry queue instead of each waiting out a timeout. After the probe interval one post is let
+ * through; if it succeeds the circuit closes again.
+ */
+public class SlackCircuitBreaker {
+
+    private static final Logger logger = Logger.getLogger(SlackCircuitBreaker.class.getName());
+
+    static final int DEFAULT_FAILURE_THRESHOLD = 5;
+    static final int DEFAULT_PROBE_INTERVAL_SECONDS = 60;
+
+    public enum State {
+        CLOSED, OPEN, HALF_OPEN
+    }
+
+    private static SlackCircuitBreaker instance;
+
+    private final ConcurrentMap<String, Breaker> breakers = new ConcurrentHashMap<String, Breaker>();
+    private volatile int failureThreshold;
+    private volatile long probeIntervalMillis;
+
+    SlackCircuitBreaker(int failureThreshold, int probeIntervalSeconds) {
+        configure(failureThreshold, probeIntervalSeconds);
+    }
+
+    public static synchronized SlackCircuitBreaker get() {
+        if (instance == null) {
+            instance = new SlackCircuitBreaker(DEFAULT_FAILURE_THRESHOLD, DEFAULT_PROBE_INTERVAL_SECONDS);
+        }
+        return instance;
+    }
+
+    public void configure(int failureThreshold, int probeIntervalSeconds) {
+        this.failureThreshold = failureThreshold > 0 ? failureThreshold : DEFAULT_FAILURE_THRESHOLD;
+        this.probeIntervalMillis = TimeUnit.SECONDS.toMillis(
+                probeIntervalSeconds > 0 ? probeIntervalSeconds : DEFAULT_PROBE_INTERVAL_SECONDS);
+    }
+
+    /**
+     * Whether a post to the webhook may go ahead. While the circuit is open this returns false without any I/O.
+     */
+    public boolean allowRequest(String teamDomain, String token) {
+        return getBreaker(teamDomain, token).allow(System.currentTimeMillis(), probeIntervalMillis);
+    }
+
+    public void recordSuccess(String teamDomain, String token) {
+        getBreaker(teamDomain, token).success(System.currentTimeMillis());
+    }
+
+    public void recordFailure(String teamDomain, String token) {
+        getBreaker(teamDomain, token).failure(System.currentTimeMillis(), failureThreshold);
+    }
+
+    /**
+     * Whether a response says something about the health of the webhook as a whole, rather than about a single
+     * room. No response at all, a server error or a rejected token count against the webhook.
+     */
+    static boolean isWebhookFailure(int statusCode) {
+        return statusCode < 0 || statusCode >= 500 || statusCode == 401 || statusCode == 403;
+    }
+
+    public List<Status> getStatus() {
+        List<Status> status = new ArrayList<Status>();
+        for (Breaker breaker : breakers.values()) {
+            status.add(breaker.status());
+        }
+        return status;
+    }
+
+    public int getFailureThreshold() {
+        return failureThreshold;
+    }
+
+    public long getProbeIntervalSeconds() {
+        return TimeUnit.MILLISECONDS.toSeconds(probeIntervalMillis);
+    }
+
+    private Breaker getBreaker(String teamDomain, String token) {
+        String key = teamDomain + "|" + token;
+        Breaker breaker = breakers.get(key);
+        if (breaker == null) {
+            Breaker created = new Breaker(teamDomain, token);
+            breaker = breakers.putIfAbsent(key, created);
+            if (breaker == null) {
+                breaker = created;
+            }
+        }
+        return breaker;
+    }
+
+    static class Breaker {
+
+        private final String teamDomain;
+        private final String token;
+        private State state = State.CLOSED;
+        private int consecutiveFailures;
+        private long openedAt;
+        private long probeStartedAt;
+        private boolean probing;
+        private long changedAt = System.currentTimeMillis();
+        private long trips;
+
+        Breaker(String teamDomain, String token) {
+            this.teamDomain = teamDomain;
+            this.token = token;
+        }
+
+        synchronized boolean allow(long now, long probeIntervalMillis) {
+            switch (state) {
+                case OPEN:
+                    if (now - openedAt < probeIntervalMillis) {
+                        return false;
+                    }
+                    transition(State.HALF_OPEN, now);
+                    return startProbe(now);
+                case HALF_OPEN:
+                    // a probe that never reported back must not keep the circuit shut forever
+                    if (probing && now - probeStartedAt < probeIntervalMillis) {
+                        return false;
+                    }
+                    return startProbe(now);
+                default:
+                    return true;
+            }
+        }
+
+        private boolean startProbe(long now) {
+            probing = true;
+            probeStartedAt = now;
+            return true;
+        }
+
+        synchronized void success(long now) {
+            consecutiveFailures = 0;
+            probing = false;
+            if (state != State.CLOSED) {
+                transition(State.CLOSED, now);
+            }
+        }
+
+        synchronized void failure(long now, int failureThreshold) {
+            consecutiveFailures++;
+            probing = false;
+            if (state == State.HALF_OPEN || (state == State.CLOSED && consecutiveFailures >= failureThreshold)) {
+                openedAt = now;
+                if (state == State.CLOSED) {
+                    trips++;
+                }
+                transition(State.OPEN, now);
+            }
+        }
+
+        synchronized State getState() {
+            return state;
+        }
+
+        private void transition(State to, long now) {
+            logger.info("Slack circuit breaker for " + teamDomain + " (" + SlackRateLimiter.mask(token) + "): "
+                    + state + " -> " + to + " after " + consecutiveFailures + " consecutive failure(s)");
+            state = to;
+            changedAt = now;
+        }
+
+        synchronized Status status() {
+            return new Status(teamDomain, SlackRateLimiter.mask(token), state, consecutiveFailures, changedAt, trips);
+        }
+    }
+
+    /**
+     * Point-in-time view of one webhook's breaker.
+     */
+    public static class Status {
+
+        private final String teamDomain;
+        private final String token;
+        private final State state;
+        private final int consecutiveFailures;
+        private final long changedAt;
+        private final long trips;
+
+        Status(String teamDomain, String token, State state, int consecutiveFailures, long changedAt, long trips) {
+            this.teamDomain = teamDomain;
+            this.token = token;
+            this.state = state;
+            this.consecutiveFailures = consecutiveFailures;
+            this.changedAt = changedAt;
+            this.trips = trips;
+        }
+
+        public String getTeamDomain() {
+            return teamDomain;
+        }
+
+        /**
+         * The webhook token, masked.
+         */
+        public String getToken() {
+            return token;
+        }
+
+        public State getState() {
+            return state;
+        }
+
+        public int getConsecutiveFailures() {
+            return consecutiveFailures;
+        }
+
+        public Date getChangedAt() {
+            return new Date(changedAt);
+        }
+
+        /**
+         * How many times the circuit has opened.
+         */
+        public long getTrips() {
+            return trips;
+        }
+    }
+}
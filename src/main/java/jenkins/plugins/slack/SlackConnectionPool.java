@@ -0,0 +1,156 @@
+package jenkins.plugins.slack;
+
+import hudson.Extension;
+import hudson.ProxyConfiguration;
+import hudson.XmlFile;
+import hudson.model.Saveable;
+import hudson.model.listeners.SaveableListener;
+import jenkins.model.Jenkins;
+import org.apache.commons.httpclient.HttpClient;
+import org.apache.commons.httpclient.MultiThreadedHttpConnectionManager;
+import org.apache.commons.httpclient.UsernamePasswordCredentials;
+import org.apache.commons.httpclient.auth.AuthScope;
+import org.apache.commons.httpclient.params.HttpConnectionManagerParams;
+import org.apache.commons.httpclient.util.IdleConnectionTimeoutThread;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.logging.Logger;
+
+/**
+ * Process-wide, keep-alive HTTP clients, one connection pool per Slack team. Clients are shared by every
+ * {@link StandardSlackService} and only rebuilt when the Jenkins proxy configuration changes.
+ */
+public class SlackConnectionPool {
+
+    private static final Logger logger = Logger.getLogger(SlackConnectionPool.class.getName());
+
+    static final int MAX_CONNECTIONS_PER_HOST = 4;
+    static final int MAX_TOTAL_CONNECTIONS = 20;
+    static final int CONNECTION_TIMEOUT_MILLIS = 10000;
+    static final int SOCKET_TIMEOUT_MILLIS = 30000;
+    static final long IDLE_TIMEOUT_MILLIS = 60000;
+
+    private static SlackConnectionPool instance;
+
+    private final Map<String, HttpClient> clients = new HashMap<String, HttpClient>();
+    private final Map<String, MultiThreadedHttpConnectionManager> managers =
+            new HashMap<String, MultiThreadedHttpConnectionManager>();
+    private IdleConnectionTimeoutThread idleConnectionReaper;
+    private ProxyConfiguration proxy;
+
+    SlackConnectionPool() {
+    }
+
+    public static synchronized SlackConnectionPool get() {
+        if (instance == null) {
+            instance = new SlackConnectionPool();
+        }
+        return instance;
+    }
+
+    /**
+     * Returns the shared client for a team, creating its connection pool on first use.
+     */
+    public synchronized HttpClient getClient(String teamDomain) {
+        ProxyConfiguration currentProxy = currentProxy();
+        if (currentProxy != proxy) {
+            // ProxyConfiguration is replaced wholesale when it is edited, so identity is enough to spot a change
+            reset();
+            proxy = currentProxy;
+        }
+        String key = getKey(teamDomain, proxy);
+        HttpClient client = clients.get(key);
+        if (client == null) {
+            client = createClient(key);
+            clients.put(key, client);
+        }
+        return client;
+    }
+
+    /**
+     * Closes every pooled connection. The next {@link #getClient(String)} call rebuilds the pools.
+     */
+    public synchronized void reset() {
+        for (MultiThreadedHttpConnectionManager manager : managers.values()) {
+            if (idleConnectionReaper != null) {
+                idleConnectionReaper.removeConnectionManager(manager);
+            }
+            manager.shutdown();
+        }
+        managers.clear();
+        clients.clear();
+        proxy = null;
+    }
+
+    public synchronized int size() {
+        return clients.size();
+    }
+
+    private HttpClient createClient(String key) {
+        MultiThreadedHttpConnectionManager manager = new MultiThreadedHttpConnectionManager();
+        HttpConnectionManagerParams params = manager.getParams();
+        params.setDefaultMaxConnectionsPerHost(MAX_CONNECTIONS_PER_HOST);
+        params.setMaxTotalConnections(MAX_TOTAL_CONNECTIONS);
+        params.setConnectionTimeout(CONNECTION_TIMEOUT_MILLIS);
+        params.setSoTimeout(SOCKET_TIMEOUT_MILLIS);
+        params.setStaleCheckingEnabled(true);
+        managers.put(key, manager);
+        getIdleConnectionReaper().addConnectionManager(manager);
+
+        HttpClient client = new HttpClient(manager);
+        if (proxy != null) {
+            client.getHostConfiguration().setProxy(proxy.name, proxy.port);
+            String username = proxy.getUserName();
+            String password = proxy.getPassword();
+            // Consider it to be passed if username specified. Sufficient?
+            if (username != null && !"".equals(username.trim())) {
+                logger.info("Using proxy authentication (user=" + username + ")");
+                // http://hc.apache.org/httpclient-3.x/authentication.html#Proxy_Authentication
+                // and
+                // http://svn.apache.org/viewvc/httpcomponents/oac.hc3x/trunk/src/examples/BasicAuthenticationExample.java?view=markup
+                client.getState().setProxyCredentials(AuthScope.ANY,
+                    new UsernamePasswordCredentials(username, password));
+            }
+        }
+        return client;
+    }
+
+    private IdleConnectionTimeoutThread getIdleConnectionReaper() {
+        if (idleConnectionReaper == null) {
+            idleConnectionReaper = new IdleConnectionTimeoutThread();
+            idleConnectionReaper.setName("Slack idle connection reaper");
+            idleConnectionReaper.setConnectionTimeout(IDLE_TIMEOUT_MILLIS);
+            idleConnectionReaper.setTimeoutInterval(IDLE_TIMEOUT_MILLIS / 2);
+            idleConnectionReaper.start();
+        }
+        return idleConnectionReaper;
+    }
+
+    private static ProxyConfiguration currentProxy() {
+        Jenkins jenkins = Jenkins.getInstance();
+        return jenkins != null ? jenkins.proxy : null;
+    }
+
+    static String getKey(String teamDomain, ProxyConfiguration proxy) {
+        if (proxy == null) {
+            return teamDomain;
+        }
+        return teamDomain + "|" + proxy.name + ":" + proxy.port + "|" + proxy.getUserName();
+    }
+
+    /**
+     * Drops pooled connections as soon as the proxy settings are saved.
+     */
+    @Extension
+    public static class ProxyListener extends SaveableListener {
+
+        @Override
+        public void onChange(Saveable o, XmlFile file) {
+            if (o instanceof ProxyConfiguration) {
+                logger.info("Proxy configuration changed, resetting Slack connection pools");
+                get().reset();
+            }
+        }
+    }
+}
@@ -0,0 +1,196 @@
+package jenkins.plugins.slack;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+/**
+ * Buffers routine notifications per route and posts them as a single summary once the digest window closes or
+ * enough of them have piled up. Failures are still posted right away by the caller and only counted here, so the
+ * summary tells the whole story for the window.
+ * <p>
+ * Digests are kept per route and window length: jobs that post to the same channel with different windows each get
+ * their own digest, closing on their own schedule.
+ */
+public class SlackDigest {
+
+    private static final Logger logger = Logger.getLogger(SlackDigest.class.getName());
+
+    static final int DEFAULT_MAX_EVENTS = 50;
+    // how many builds are named in the summary before it switches to a count
+    static final int MAX_LISTED = 10;
+
+    private static SlackDigest instance;
+
+    private final Map<Key, Batch> batches = new HashMap<Key, Batch>();
+    private final ScheduledExecutorService timer;
+    private final SlackDispatcher dispatcher;
+
+    SlackDigest(SlackDispatcher dispatcher) {
+        this.dispatcher = dispatcher;
+        ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(1, new SlackThreadFactory("Slack digest"));
+        executor.setExecuteExistingDelayedTasksAfterShutdownPolicy(false);
+        this.timer = executor;
+    }
+
+    public static synchronized SlackDigest get() {
+        if (instance == null) {
+            instance = new SlackDigest(SlackDispatcher.get());
+        }
+        return instance;
+    }
+
+    /**
+     * Adds a routine (successful) build to the route's digest, opening a new window if none is open.
+     *
+     * @param label already escaped Slack markup naming the build, usually a link to it
+     */
+    public void add(SlackRoute route, int windowSeconds, int maxEvents, String label) {
+        Key key = new Key(route, windowSeconds);
+        Batch flushNow = null;
+        synchronized (batches) {
+            Batch batch = batches.get(key);
+            if (batch == null) {
+                batch = new Batch();
+                batches.put(key, batch);
+                schedule(key, batch);
+            }
+            batch.succeeded++;
+            batch.addSucceeded(label);
+            if (batch.succeeded >= (maxEvents > 0 ? maxEvents : DEFAULT_MAX_EVENTS)) {
+                batches.remove(key);
+                flushNow = batch;
+            }
+        }
+        if (flushNow != null) {
+            send(route, flushNow);
+        }
+    }
+
+    /**
+     * Counts a failure that was posted immediately, if a digest window of that length is open for the route.
+     */
+    public void recordFailure(SlackRoute route, int windowSeconds, String label) {
+        synchronized (batches) {
+            Batch batch = batches.get(new Key(route, windowSeconds));
+            if (batch != null) {
+                batch.failed++;
+                if (batch.failures.size() < MAX_LISTED) {
+                    batch.failures.add(label);
+                }
+            }
+        }
+    }
+
+    /**
+     * Posts every open digest now, e.g. before Jenkins shuts down.
+     */
+    public void flushAll() {
+        Map<Key, Batch> pending;
+        synchronized (batches) {
+            pending = new HashMap<Key, Batch>(batches);
+            batches.clear();
+        }
+        for (Map.Entry<Key, Batch> entry : pending.entrySet()) {
+            send(entry.getKey().route, entry.getValue());
+        }
+    }
+
+    public int getOpenDigests() {
+        synchronized (batches) {
+            return batches.size();
+        }
+    }
+
+    private void schedule(final Key key, final Batch batch) {
+        timer.schedule(new Runnable() {
+            public void run() {
+                synchronized (batches) {
+                    // the batch may already have been flushed because it hit the event limit
+                    if (batches.get(key) != batch) {
+                        return;
+                    }
+                    batches.remove(key);
+                }
+                send(key.route, batch);
+            }
+        }, key.windowSeconds, TimeUnit.SECONDS);
+    }
+
+    private void send(SlackRoute route, Batch batch) {
+        logger.fine("Flushing Slack digest for " + route + ": " + batch.succeeded + " succeeded, "
+                + batch.failed + " failed");
+        dispatcher.dispatch(route, SlackMessage.of(batch.getSummary(),
+                batch.failed > 0 ? "danger" : "good"));
+    }
+
+    private static final class Key {
+
+        private final SlackRoute route;
+        private final int windowSeconds;
+
+        Key(SlackRoute route, int windowSeconds) {
+            this.route = route;
+            this.windowSeconds = windowSeconds;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key key = (Key) o;
+            return windowSeconds == key.windowSeconds && route.equals(key.route);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * route.hashCode() + windowSeconds;
+        }
+    }
+
+    static class Batch {
+
+        private final List<String> successes = new ArrayList<String>();
+        private final List<String> failures = new ArrayList<String>();
+        private int succeeded;
+        private int failed;
+
+        void addSucceeded(String label) {
+            if (successes.size() < MAX_LISTED) {
+                successes.add(label);
+            }
+        }
+
+        String getSummary() {
+            StringBuilder summary = new StringBuilder();
+            summary.append("Digest: ");
+            summary.append(succeeded).append(succeeded == 1 ? " build" : " builds").append(" succeeded");
+            if (failed > 0) {
+                summary.append(", ").append(failed).append(" failed: ");
+                appendLabels(summary, failures, failed);
+            } else {
+                summary.append(": ");
+                appendLabels(summary, successes, succeeded);
+            }
+            return summary.toString();
+        }
+
+        private static void appendLabels(StringBuilder summary, List<String> labels, int total) {
+            for (int i = 0; i < labels.size(); i++) {
+                if (i > 0) {
+                    summary.append(", ");
+                }
+                summary.append(labels.get(i));
+            }
+            if (total > labels.size()) {
+                summary.append(" and ").append(total - labels.size()).append(" more");
+            }
+        }
+    }
+}
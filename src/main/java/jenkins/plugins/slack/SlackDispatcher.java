@@ -0,0 +1,408 @@
+package jenkins.plugins.slack;
+
+import hudson.Extension;
+import hudson.init.InitMilestone;
+import hudson.init.Initializer;
+import hudson.model.listeners.ItemListener;
+import org.apache.commons.lang.StringUtils;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Hands finished notifications to a bounded pool of worker threads so that the HTTP round trip to Slack never
+ * runs on the thread that started or completed the build.
+ * <p>
+ * Each room gets its own entry, and entries for one team and room are posted in the order they were dispatched;
+ * different rooms are posted in parallel. A room that has to be retried holds back later messages to that room
+ * until the retry has gone through or been given up on. The same goes for a room whose webhook is over its rate
+ * limit or paused by Slack: its lane waits, without keeping a worker thread, while other rooms are posted to.
+ * When the queue is full, an entry is deferred and later entries for its room are deferred behind it, so that they
+ * are still posted in order once there is room again.
+ * <p>
+ * Every notification is journaled in the {@link SlackOutbox} before it is queued. Rooms that fail for a reason
+ * that may go away (no connectivity, 5xx, throttling) are retried with backoff for up to {@link #MAX_AGE_MILLIS};
+ * anything still pending when Jenkins stops is replayed on the next start.
+ */
+public class SlackDispatcher {
+
+    private static final Logger logger = Logger.getLogger(SlackDispatcher.class.getName());
+
+    static final int DEFAULT_THREADS = 2;
+    static final int DEFAULT_QUEUE_SIZE = 1000;
+    static final long SHUTDOWN_TIMEOUT_SECONDS = 30;
+    static final long MIN_RETRY_DELAY_MILLIS = 5000;
+    static final long MAX_RETRY_DELAY_MILLIS = TimeUnit.MINUTES.toMillis(10);
+    static final long MAX_AGE_MILLIS = TimeUnit.HOURS.toMillis(24);
+
+    private static SlackDispatcher instance;
+
+    private final SlackOutbox outbox;
+    // ids currently queued or being delivered, so a replayed notification is never sent twice at once
+    private final Set<String> inFlight = Collections.synchronizedSet(new HashSet<String>());
+    // entries the queue had no room for, by team and room, in the order they were dispatched
+    private final Map<String, Deque<SlackOutbox.Entry>> deferred = new HashMap<String, Deque<SlackOutbox.Entry>>();
+    private final ScheduledThreadPoolExecutor retryTimer;
+    private final ChannelExecutor executor;
+    private int threads;
+    private int queueSize;
+
+    SlackDispatcher(SlackOutbox outbox, int threads, int queueSize) {
+        this.outbox = outbox;
+        this.threads = sanitize(threads, DEFAULT_THREADS);
+        this.queueSize = sanitize(queueSize, DEFAULT_QUEUE_SIZE);
+        this.retryTimer = new ScheduledThreadPoolExecutor(1, new SlackThreadFactory("Slack retry"));
+        this.retryTimer.setExecuteExistingDelayedTasksAfterShutdownPolicy(false);
+        this.executor = new ChannelExecutor(this.threads, this.queueSize, retryTimer);
+    }
+
+    public static synchronized SlackDispatcher get() {
+        if (instance == null) {
+            instance = new SlackDispatcher(SlackOutbox.get(), DEFAULT_THREADS, DEFAULT_QUEUE_SIZE);
+        }
+        return instance;
+    }
+
+    /**
+     * Journals a message and queues it for delivery, one entry per room. Returns as soon as the message is written to
+     * the outbox; false means the queue was full for some room, in which case delivery is retried later.
+     */
+    public boolean dispatch(SlackRoute route, SlackMessage message) {
+        boolean accepted = true;
+        // always split, so that "#ops" and "#ops," share a lane and keep their order
+        for (String room : route.getRooms()) {
+            SlackRoute single = new SlackRoute(route.getTeamDomain(), route.getToken(), room);
+            accepted &= submit(outbox.add(single, message), 0);
+        }
+        return accepted;
+    }
+
+    /**
+     * Queues everything the outbox still holds, typically notifications left over from before a restart.
+     */
+    public void replay() {
+        List<SlackOutbox.Entry> pending = outbox.getPending();
+        if (!pending.isEmpty()) {
+            logger.info("Replaying " + pending.size() + " undelivered Slack notification(s)");
+        }
+        for (SlackOutbox.Entry entry : pending) {
+            submit(entry, 0);
+        }
+    }
+
+    private boolean submit(SlackOutbox.Entry entry, int attempt) {
+        if (!inFlight.add(entry.getId())) {
+            return true;
+        }
+        String key = getKey(entry.getRoute());
+        synchronized (deferred) {
+            Deque<SlackOutbox.Entry> waiting = deferred.get(key);
+            if (waiting == null) {
+                try {
+                    executor.execute(key, new Delivery(entry, attempt));
+                    return true;
+                } catch (RejectedExecutionException e) {
+                    // deferred below
+                }
+            }
+            if (isExpired(entry)) {
+                inFlight.remove(entry.getId());
+                giveUp(entry, entry.getRoute().getRoom());
+                outbox.ack(entry.getId());
+                return false;
+            }
+            logger.warning("Slack dispatch queue is full (" + queueSize + "), will retry notification: "
+                    + entry.getMessage());
+            if (waiting == null) {
+                waiting = new ArrayDeque<SlackOutbox.Entry>();
+                deferred.put(key, waiting);
+                scheduleRetry(key, attempt);
+            }
+            // behind any deferred earlier, so that it does not overtake them once there is room
+            waiting.add(entry);
+            return false;
+        }
+    }
+
+    /**
+     * Queues a room's deferred entries, oldest first, for as long as there is room. If the queue is still full,
+     * the rest wait for the next try.
+     */
+    private void resume(String key, int attempt) {
+        synchronized (deferred) {
+            Deque<SlackOutbox.Entry> waiting = deferred.get(key);
+            while (!waiting.isEmpty()) {
+                SlackOutbox.Entry entry = waiting.peek();
+                if (isExpired(entry)) {
+                    waiting.poll();
+                    inFlight.remove(entry.getId());
+                    giveUp(entry, entry.getRoute().getRoom());
+                    outbox.ack(entry.getId());
+                    continue;
+                }
+                try {
+                    executor.execute(key, new Delivery(entry, attempt));
+                } catch (RejectedExecutionException e) {
+                    scheduleRetry(key, attempt);
+                    return;
+                }
+                waiting.poll();
+            }
+            deferred.remove(key);
+        }
+    }
+
+    static String getKey(SlackRoute route) {
+        return route.getTeamDomain() + "|" + route.getRoom();
+    }
+
+    /**
+     * Posts one entry; if some of its rooms have to be retried, journals a retry entry for them and takes its place
+     * at the front of the lane.
+     */
+    private class Delivery extends ChannelExecutor.Task {
+
+        private SlackOutbox.Entry entry;
+        private int attempt;
+
+        Delivery(SlackOutbox.Entry entry, int attempt) {
+            this.entry = entry;
+            this.attempt = attempt;
+        }
+
+        @Override
+        long run() {
+            Retry retry;
+            try {
+                retry = deliver(entry, attempt);
+            } finally {
+                inFlight.remove(entry.getId());
+            }
+            if (retry == null) {
+                return -1;
+            }
+            entry = retry.entry;
+            inFlight.add(entry.getId());
+            if (retry.throttled) {
+                // waiting for the webhook's rate limit is not a failed attempt, so it does not add to the backoff
+                return retry.delayMillis;
+            }
+            attempt++;
+            return retryDelayMillis(attempt);
+        }
+    }
+
+    /**
+     * Rooms of an entry to post to again, and when.
+     */
+    private static final class Retry {
+
+        private final SlackOutbox.Entry entry;
+        // the rooms were only held back by the webhook's throttle, for this long
+        private final boolean throttled;
+        private final long delayMillis;
+
+        Retry(SlackOutbox.Entry entry, boolean throttled, long delayMillis) {
+            this.entry = entry;
+            this.throttled = throttled;
+            this.delayMillis = delayMillis;
+        }
+    }
+
+    /**
+     * @return the rooms to retry, or null if there are none
+     */
+    private Retry deliver(SlackOutbox.Entry entry, int attempt) {
+        PublishResult result;
+        try {
+            result = createService(entry.getRoute()).deliver(entry.getMessage());
+        } catch (RuntimeException e) {
+            logger.log(Level.SEVERE, "Error posting to Slack", e);
+            result = new PublishResult(Collections.singletonList(
+                    PublishResult.RoomResult.failed(entry.getRoute().getRoom(), e)));
+        }
+        for (PublishResult.RoomResult room : result.getRooms()) {
+            if (room.isSuccess()) {
+                // the entry was created when the build event was, and retries keep that time
+                SlackMetrics.get().recordDelivered(entry.getRoute().getTeamDomain(), room.getRoom(),
+                        entry.getCreated());
+            }
+        }
+        List<String> retryRooms = new ArrayList<String>();
+        boolean throttled = true;
+        long throttledFor = 0;
+        for (PublishResult.RoomResult room : result.getFailures()) {
+            if (isRetryable(room)) {
+                retryRooms.add(room.getRoom());
+                if (room.isThrottled()) {
+                    throttledFor = Math.max(throttledFor, room.getRetryAfterMillis());
+                } else {
+                    throttled = false;
+                }
+            }
+        }
+        Retry retry = null;
+        if (!retryRooms.isEmpty()) {
+            if (isExpired(entry)) {
+                giveUp(entry, retryRooms.toString());
+            } else if (throttled && retryRooms.size() == result.getRooms().size()) {
+                // nothing was posted, so the entry stays in the outbox as it is
+                return new Retry(entry, true, throttledFor);
+            } else {
+                // Only the rooms that failed are retried, so the others do not get the message twice
+                SlackRoute route = entry.getRoute();
+                retry = new Retry(outbox.add(new SlackOutbox.Entry(entry.getId() + "+" + (attempt + 1),
+                        entry.getCreated(), new SlackRoute(route.getTeamDomain(), route.getToken(),
+                        StringUtils.join(retryRooms, ",")), entry.getMessage())), throttled, throttledFor);
+            }
+        }
+        outbox.ack(entry.getId());
+        return retry;
+    }
+
+    /**
+     * Whether a failed room is worth trying again: the request never got an answer, timed out, was throttled, or
+     * Slack had a server-side problem.
+     */
+    static boolean isRetryable(PublishResult.RoomResult room) {
+        int status = room.getStatusCode();
+        return status < 0 || status == 408 || status == StandardSlackService.SC_TOO_MANY_REQUESTS || status >= 500;
+    }
+
+    static long getRetryDelayMillis(int attempt) {
+        long delay = MIN_RETRY_DELAY_MILLIS << Math.min(attempt, 16);
+        return Math.min(delay, MAX_RETRY_DELAY_MILLIS);
+    }
+
+    long retryDelayMillis(int attempt) {
+        return getRetryDelayMillis(attempt);
+    }
+
+    private static boolean isExpired(SlackOutbox.Entry entry) {
+        return System.currentTimeMillis() - entry.getCreated() > MAX_AGE_MILLIS;
+    }
+
+    private static void giveUp(SlackOutbox.Entry entry, String rooms) {
+        logger.warning("Giving up on Slack notification to " + rooms + " after "
+                + TimeUnit.MILLISECONDS.toHours(MAX_AGE_MILLIS) + "h: " + entry.getMessage());
+    }
+
+    /**
+     * Tries a room's deferred entries again later, backing off further each time the queue turns them away.
+     */
+    private void scheduleRetry(final String key, final int attempt) {
+        try {
+            retryTimer.schedule(new Runnable() {
+                public void run() {
+                    resume(key, attempt + 1);
+                }
+            }, retryDelayMillis(attempt), TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            // shutting down, the outbox keeps them for the next start
+        }
+    }
+
+    SlackService createService(SlackRoute route) {
+        return route.createService();
+    }
+
+    /**
+     * Applies new pool settings in place.
+     */
+    public synchronized void configure(int threads, int queueSize) {
+        threads = sanitize(threads, DEFAULT_THREADS);
+        queueSize = sanitize(queueSize, DEFAULT_QUEUE_SIZE);
+        executor.configure(threads, queueSize);
+        this.threads = threads;
+        this.queueSize = queueSize;
+    }
+
+    /**
+     * Stops accepting new messages and waits for the ones already queued to be delivered. Rooms waiting for a retry
+     * are not drained; their messages stay in the outbox and are replayed on the next start.
+     *
+     * @return true if the queue drained before the timeout
+     */
+    public boolean shutdown(long timeout, TimeUnit unit) {
+        retryTimer.shutdown();
+        try {
+            return executor.shutdown(timeout, unit);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        } finally {
+            outbox.close();
+        }
+    }
+
+    public int getQueueDepth() {
+        return executor.getQueued();
+    }
+
+    /**
+     * Rooms with notifications deferred because the queue was full, and rooms held up waiting to retry a post.
+     */
+    public int getPendingRetries() {
+        return retryTimer.getQueue().size();
+    }
+
+    /**
+     * Rooms whose later notifications are held back until a failed post has been retried.
+     */
+    public int getWaitingChannels() {
+        return executor.getWaitingLanes();
+    }
+
+    public int getThreads() {
+        return threads;
+    }
+
+    public int getQueueSize() {
+        return queueSize;
+    }
+
+    public SlackOutbox getOutbox() {
+        return outbox;
+    }
+
+    private static int sanitize(int value, int defaultValue) {
+        return value > 0 ? value : defaultValue;
+    }
+
+    /**
+     * Sends notifications that were still in the outbox when Jenkins last stopped.
+     */
+    @Initializer(after = InitMilestone.JOB_LOADED)
+    public static void replayOutbox() {
+        get().replay();
+    }
+
+    /**
+     * Flushes open digests and drains the queue before Jenkins goes down so that notifications for the last builds
+     * are not lost.
+     */
+    @Extension
+    public static class ShutdownListener extends ItemListener {
+
+        @Override
+        public void onBeforeShutdown() {
+            SlackDigest.get().flushAll();
+            logger.info("Draining Slack dispatch queue...");
+            if (!get().shutdown(SHUTDOWN_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+                logger.warning("Slack dispatch queue did not drain within " + SHUTDOWN_TIMEOUT_SECONDS + "s");
+            }
+        }
+    }
+}
@@ -3,13 +3,10 @@ package jenkins.plugins.slack;
 import hudson.Extension;
 import hudson.model.AbstractBuild;
 import hudson.model.AbstractProject;
-import hudson.model.Descriptor;
 import hudson.model.TaskListener;
 import hudson.model.BuildListener;
 import hudson.model.listeners.RunListener;
-import hudson.tasks.Publisher;
 
-import java.util.Map;
 import java.util.logging.Logger;
 
 @Extension
@@ -48,14 +45,12 @@ public class SlackListener extends RunListener<AbstractBuild> {
 
     @SuppressWarnings("unchecked")
     FineGrainedNotifier getNotifier(AbstractProject project, TaskListener listener) {
-        Map<Descriptor<Publisher>, Publisher> map = project.getPublishersList().toMap();
-        for (Publisher publisher : map.values()) {
-            if (publisher instanceof SlackNotifier) {
-                ((SlackNotifier)publisher).update();
-                return new ActiveNotifier((SlackNotifier) publisher, (BuildListener)listener);
-            }
+        SlackNotifier notifier = SlackNotifierRegistry.get().getNotifier(project);
+        if (notifier == null) {
+            return DisabledNotifier.INSTANCE;
         }
-        return new DisabledNotifier();
+        notifier.update();
+        return new ActiveNotifier(notifier, (BuildListener)listener);
     }
 
 }
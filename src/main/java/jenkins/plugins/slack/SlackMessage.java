@@ -0,0 +1,104 @@
+package jenkins.plugins.slack;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Everything that goes out in a single Slack post: one or more colored attachments.
+ */
+public class SlackMessage {
+
+    private final List<Attachment> attachments = new ArrayList<Attachment>();
+    // the build this is the start or completion notice of, for transports that can edit the one into the other
+    private String startOf;
+    private String completionOf;
+
+    public SlackMessage() {
+    }
+
+    public static SlackMessage of(String text, String color) {
+        return new SlackMessage().attach(text, color);
+    }
+
+    public SlackMessage attach(String text, String color) {
+        attachments.add(new Attachment(text, color));
+        return this;
+    }
+
+    /**
+     * A message with the same attachments, which can be added to without changing this one.
+     */
+    public SlackMessage copy() {
+        SlackMessage copy = new SlackMessage();
+        copy.attachments.addAll(attachments);
+        copy.startOf = startOf;
+        copy.completionOf = completionOf;
+        return copy;
+    }
+
+    /**
+     * Marks this as the start notice of a build, which its completion notice may replace.
+     *
+     * @param build identifies the build, e.g. {@code folder/job#42}
+     */
+    public SlackMessage startOf(String build) {
+        this.startOf = build;
+        return this;
+    }
+
+    /**
+     * Marks this as the completion notice of a build, which may replace the build's start notice.
+     */
+    public SlackMessage completionOf(String build) {
+        this.completionOf = build;
+        return this;
+    }
+
+    public String getStartOf() {
+        return startOf;
+    }
+
+    public String getCompletionOf() {
+        return completionOf;
+    }
+
+    public List<Attachment> getAttachments() {
+        return Collections.unmodifiableList(attachments);
+    }
+
+    public boolean isEmpty() {
+        return attachments.isEmpty();
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder text = new StringBuilder();
+        for (Attachment attachment : attachments) {
+            if (text.length() > 0) {
+                text.append('\n');
+            }
+            text.append(attachment.getText());
+        }
+        return text.toString();
+    }
+
+    public static class Attachment {
+
+        private final String text;
+        private final String color;
+
+        public Attachment(String text, String color) {
+            this.text = text;
+            this.color = color;
+        }
+
+        public String getText() {
+            return text;
+        }
+
+        public String getColor() {
+            return color;
+        }
+    }
+}
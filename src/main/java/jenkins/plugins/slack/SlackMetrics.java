@@ -0,0 +1,202 @@
+package jenkins.plugins.slack;
+
+import org.json.JSONObject;
+
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Counts what happens to Slack posts: request latency per team, HTTP status codes, successes and failures per
+ * channel, bytes sent, and how long after the build event a notification reached its room. Recording takes no locks
+ * once a team, status or channel has been seen; everything is also passed on to any {@link SlackMetricsListener}.
+ */
+public class SlackMetrics {
+
+    private static final Logger logger = Logger.getLogger(SlackMetrics.class.getName());
+
+    // channels are dynamic (rooms can use build variables), so past this many they are counted together
+    static final int MAX_CHANNELS = 1000;
+    static final String OTHER_CHANNELS = "(other)";
+    static final int NO_RESPONSE = -1;
+
+    private static SlackMetrics instance;
+
+    private final ConcurrentMap<String, LatencyHistogram> publishLatency =
+            new ConcurrentHashMap<String, LatencyHistogram>();
+    private final ConcurrentMap<Integer, StripedCounter> statusCodes = new ConcurrentHashMap<Integer, StripedCounter>();
+    private final ConcurrentMap<String, ChannelCounters> channels = new ConcurrentHashMap<String, ChannelCounters>();
+    private final StripedCounter bytesSent = new StripedCounter();
+    private final LatencyHistogram deliveryDelay = new LatencyHistogram();
+
+    SlackMetrics() {
+    }
+
+    public static synchronized SlackMetrics get() {
+        if (instance == null) {
+            instance = new SlackMetrics();
+        }
+        return instance;
+    }
+
+    /**
+     * Records one HTTP request to a webhook.
+     *
+     * @param statusCode the HTTP status, or {@link #NO_RESPONSE}
+     */
+    public void recordPost(String teamDomain, String room, int statusCode, long latencyMillis, long bytes) {
+        LatencyHistogram latency = publishLatency.get(teamDomain);
+        if (latency == null) {
+            LatencyHistogram created = new LatencyHistogram();
+            latency = publishLatency.putIfAbsent(teamDomain, created);
+            if (latency == null) {
+                latency = created;
+            }
+        }
+        latency.record(latencyMillis);
+        StripedCounter status = statusCodes.get(statusCode);
+        if (status == null) {
+            StripedCounter created = new StripedCounter(4);
+            status = statusCodes.putIfAbsent(statusCode, created);
+            if (status == null) {
+                status = created;
+            }
+        }
+        status.increment();
+        if (bytes > 0) {
+            bytesSent.add(bytes);
+        }
+        for (SlackMetricsListener listener : getListeners()) {
+            try {
+                listener.onPost(teamDomain, room, statusCode, latencyMillis, bytes);
+            } catch (RuntimeException e) {
+                logger.log(Level.WARNING, "Slack metrics listener " + listener + " failed", e);
+            }
+        }
+    }
+
+    /**
+     * Records whether posting to a room succeeded. A room held back by the throttle is not recorded until it is
+     * posted to; a room the dispatcher retries later is recorded again then.
+     */
+    public void recordResult(String teamDomain, String room, boolean success) {
+        ChannelCounters counters = getChannel(teamDomain, room);
+        if (success) {
+            counters.delivered.increment();
+        } else {
+            counters.failed.increment();
+        }
+        for (SlackMetricsListener listener : getListeners()) {
+            try {
+                listener.onResult(teamDomain, room, success);
+            } catch (RuntimeException e) {
+                logger.log(Level.WARNING, "Slack metrics listener " + listener + " failed", e);
+            }
+        }
+    }
+
+    /**
+     * Records that a notification reached a room, given when the build event that caused it happened.
+     */
+    public void recordDelivered(String teamDomain, String room, long eventTimeMillis) {
+        long delay = System.currentTimeMillis() - eventTimeMillis;
+        deliveryDelay.record(delay);
+        for (SlackMetricsListener listener : getListeners()) {
+            try {
+                listener.onDelivered(teamDomain, room, delay);
+            } catch (RuntimeException e) {
+                logger.log(Level.WARNING, "Slack metrics listener " + listener + " failed", e);
+            }
+        }
+    }
+
+    private ChannelCounters getChannel(String teamDomain, String room) {
+        String key = teamDomain + " " + room;
+        ChannelCounters counters = channels.get(key);
+        if (counters == null) {
+            // the limit is checked without a lock, so it can be overshot by a few channels
+            if (channels.size() >= MAX_CHANNELS) {
+                key = teamDomain + " " + OTHER_CHANNELS;
+                counters = channels.get(key);
+                if (counters != null) {
+                    return counters;
+                }
+            }
+            ChannelCounters created = new ChannelCounters();
+            counters = channels.putIfAbsent(key, created);
+            if (counters == null) {
+                counters = created;
+            }
+        }
+        return counters;
+    }
+
+    List<SlackMetricsListener> getListeners() {
+        return SlackMetricsListener.all();
+    }
+
+    public LatencyHistogram getPublishLatency(String teamDomain) {
+        return publishLatency.get(teamDomain);
+    }
+
+    public long getStatusCount(int statusCode) {
+        StripedCounter counter = statusCodes.get(statusCode);
+        return counter != null ? counter.sum() : 0;
+    }
+
+    public long getDelivered(String teamDomain, String room) {
+        ChannelCounters counters = channels.get(teamDomain + " " + room);
+        return counters != null ? counters.delivered.sum() : 0;
+    }
+
+    public long getFailed(String teamDomain, String room) {
+        ChannelCounters counters = channels.get(teamDomain + " " + room);
+        return counters != null ? counters.failed.sum() : 0;
+    }
+
+    public long getBytesSent() {
+        return bytesSent.sum();
+    }
+
+    public LatencyHistogram getDeliveryDelay() {
+        return deliveryDelay;
+    }
+
+    public JSONObject toJSON() {
+        // sorted, so that the output is stable from one scrape to the next
+        JSONObject latency = new JSONObject();
+        Map<String, LatencyHistogram> teams = new TreeMap<String, LatencyHistogram>(publishLatency);
+        for (Map.Entry<String, LatencyHistogram> team : teams.entrySet()) {
+            latency.put(team.getKey(), team.getValue().toJSON());
+        }
+        JSONObject statuses = new JSONObject();
+        Map<Integer, StripedCounter> codes = new TreeMap<Integer, StripedCounter>(statusCodes);
+        for (Map.Entry<Integer, StripedCounter> status : codes.entrySet()) {
+            statuses.put(String.valueOf(status.getKey()), status.getValue().sum());
+        }
+        JSONObject channelCounts = new JSONObject();
+        Map<String, ChannelCounters> rooms = new TreeMap<String, ChannelCounters>(channels);
+        for (Map.Entry<String, ChannelCounters> channel : rooms.entrySet()) {
+            channelCounts.put(channel.getKey(), new JSONObject()
+                    .put("delivered", channel.getValue().delivered.sum())
+                    .put("failed", channel.getValue().failed.sum()));
+        }
+        return new JSONObject()
+                .put("publishLatency", latency)
+                .put("statusCodes", statuses)
+                .put("channels", channelCounts)
+                .put("bytesSent", getBytesSent())
+                .put("deliveryDelay", deliveryDelay.toJSON());
+    }
+
+    private static final class ChannelCounters {
+
+        // channels are many and mostly quiet, so fewer stripes than the default
+        private final StripedCounter delivered = new StripedCounter(2);
+        private final StripedCounter failed = new StripedCounter(2);
+    }
+}
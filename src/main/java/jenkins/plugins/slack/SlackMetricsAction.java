@@ -0,0 +1,47 @@
+package jenkins.plugins.slack;
+
+import hudson.Extension;
+import hudson.model.RootAction;
+import jenkins.model.Jenkins;
+import org.json.JSONObject;
+import org.kohsuke.stapler.StaplerRequest;
+import org.kohsuke.stapler.StaplerResponse;
+
+import java.io.IOException;
+
+/**
+ * Serves {@link SlackMetrics} and the dispatcher's queue as JSON at {@code /slack-metrics/}, for monitoring
+ * systems to scrape. Not shown in the side panel.
+ */
+@Extension
+public class SlackMetricsAction implements RootAction {
+
+    public String getIconFileName() {
+        return null;
+    }
+
+    public String getDisplayName() {
+        return "Slack Metrics";
+    }
+
+    public String getUrlName() {
+        return "slack-metrics";
+    }
+
+    public void doIndex(StaplerRequest req, StaplerResponse rsp) throws IOException {
+        Jenkins.getInstance().checkPermission(Jenkins.ADMINISTER);
+        rsp.setContentType("application/json;charset=UTF-8");
+        rsp.getWriter().print(getMetrics().toString());
+    }
+
+    static JSONObject getMetrics() {
+        SlackDispatcher dispatcher = SlackDispatcher.get();
+        return SlackMetrics.get().toJSON()
+                .put("suppressed", SlackSuppressor.get().getSuppressed())
+                .put("dispatcher", new JSONObject()
+                        .put("queueDepth", dispatcher.getQueueDepth())
+                        .put("pendingRetries", dispatcher.getPendingRetries())
+                        .put("waitingChannels", dispatcher.getWaitingChannels())
+                        .put("undelivered", dispatcher.getOutbox().size()));
+    }
+}
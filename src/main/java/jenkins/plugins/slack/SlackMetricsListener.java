@@ -0,0 +1,43 @@
+package jenkins.plugins.slack;
+
+import hudson.ExtensionPoint;
+import jenkins.model.Jenkins;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Receives every measurement {@link SlackMetrics} records, for plugins that export metrics to a monitoring system.
+ * Methods are called on the thread that posts to Slack, so they should return quickly.
+ */
+public abstract class SlackMetricsListener implements ExtensionPoint {
+
+    /**
+     * One HTTP request to a webhook has finished.
+     *
+     * @param statusCode the HTTP status, or -1 if there was no response
+     */
+    public void onPost(String teamDomain, String room, int statusCode, long latencyMillis, long bytes) {
+    }
+
+    /**
+     * A room has been posted to. A room held back by the throttle is reported once it has been posted to, and a room
+     * that is retried later is reported again.
+     */
+    public void onResult(String teamDomain, String room, boolean success) {
+    }
+
+    /**
+     * A notification reached a room, this long after the build event that caused it.
+     */
+    public void onDelivered(String teamDomain, String room, long delayMillis) {
+    }
+
+    public static List<SlackMetricsListener> all() {
+        Jenkins jenkins = Jenkins.getInstance();
+        if (jenkins == null) {
+            return Collections.emptyList();
+        }
+        return jenkins.getExtensionList(SlackMetricsListener.class);
+    }
+}
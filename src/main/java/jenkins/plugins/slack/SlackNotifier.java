@@ -11,7 +11,6 @@ import hudson.model.UserProperty;
 import hudson.model.UserPropertyDescriptor;
 import hudson.model.AbstractBuild;
 import hudson.model.AbstractProject;
-import hudson.model.Descriptor;
 import hudson.tasks.BuildStepDescriptor;
 import hudson.tasks.BuildStepMonitor;
 import hudson.tasks.Notifier;
@@ -19,7 +18,6 @@ import hudson.tasks.Publisher;
 import hudson.util.FormValidation;
 
 import java.io.IOException;
-import java.util.Map;
 import java.util.logging.Logger;
 import javax.servlet.ServletException;
 
@@ -40,6 +38,9 @@ public class SlackNotifier extends Notifier {
     private String buildServerUrl;
     private String room;
     private String sendAs;
+    private int digestWindow;
+    private int digestMaxEvents = SlackDigest.DEFAULT_MAX_EVENTS;
+    private int suppressWindow;
 
     @Override
     public DescriptorImpl getDescriptor() {
@@ -72,6 +73,18 @@ public class SlackNotifier extends Notifier {
         return sendAs;
     }
 
+    public int getDigestWindow() {
+        return digestWindow;
+    }
+
+    public int getDigestMaxEvents() {
+        return digestMaxEvents;
+    }
+
+    public int getSuppressWindow() {
+        return suppressWindow;
+    }
+
     @DataBoundConstructor
     public SlackNotifier(final String teamDomain, final String authToken, final String room, String buildServerUrl, final String sendAs) {
         super();
@@ -97,6 +110,9 @@ public class SlackNotifier extends Notifier {
         this.buildServerUrl = getDescriptor().buildServerUrl;
         this.room = getDescriptor().room;
         this.sendAs = getDescriptor().sendAs;
+        this.digestWindow = getDescriptor().digestWindow;
+        this.digestMaxEvents = getDescriptor().digestMaxEvents;
+        this.suppressWindow = getDescriptor().suppressWindow;
     }
 
     @Extension
@@ -107,9 +123,22 @@ public class SlackNotifier extends Notifier {
         private String room;
         private String buildServerUrl;
         private String sendAs;
+        private int dispatchThreads = SlackDispatcher.DEFAULT_THREADS;
+        private int dispatchQueueSize = SlackDispatcher.DEFAULT_QUEUE_SIZE;
+        // no longer used: rooms are posted to in parallel by the dispatcher threads; kept so old configurations load
+        @Deprecated
+        private transient int fanOutConcurrency;
+        private int digestWindow;
+        private int digestMaxEvents = SlackDigest.DEFAULT_MAX_EVENTS;
+        private int suppressWindow;
+        private int rateLimit = SlackRateLimiter.DEFAULT_RATE_PER_MINUTE;
+        private int rateLimitBurst = SlackRateLimiter.DEFAULT_BURST;
+        private int breakerThreshold = SlackCircuitBreaker.DEFAULT_FAILURE_THRESHOLD;
+        private int breakerProbeInterval = SlackCircuitBreaker.DEFAULT_PROBE_INTERVAL_SECONDS;
 
         public DescriptorImpl() {
             load();
+            applyDeliverySettings();
         }
 
         public String getTeamDomain() {
@@ -138,6 +167,42 @@ public class SlackNotifier extends Notifier {
             return sendAs;
         }
 
+        public int getDispatchThreads() {
+            return dispatchThreads;
+        }
+
+        public int getDispatchQueueSize() {
+            return dispatchQueueSize;
+        }
+
+        public int getDigestWindow() {
+            return digestWindow;
+        }
+
+        public int getDigestMaxEvents() {
+            return digestMaxEvents;
+        }
+
+        public int getSuppressWindow() {
+            return suppressWindow;
+        }
+
+        public int getRateLimit() {
+            return rateLimit;
+        }
+
+        public int getRateLimitBurst() {
+            return rateLimitBurst;
+        }
+
+        public int getBreakerThreshold() {
+            return breakerThreshold;
+        }
+
+        public int getBreakerProbeInterval() {
+            return breakerProbeInterval;
+        }
+
         public boolean isApplicable(Class<? extends AbstractProject> aClass) {
             return true;
         }
@@ -169,6 +234,17 @@ public class SlackNotifier extends Notifier {
             room = sr.getParameter("slackRoom");
             buildServerUrl = sr.getParameter("slackBuildServerUrl");
             sendAs = sr.getParameter("slackSendAs");
+            dispatchThreads = parseInt(sr.getParameter("slackDispatchThreads"), SlackDispatcher.DEFAULT_THREADS);
+            dispatchQueueSize = parseInt(sr.getParameter("slackDispatchQueueSize"), SlackDispatcher.DEFAULT_QUEUE_SIZE);
+            digestWindow = parseInt(sr.getParameter("slackDigestWindow"), 0);
+            digestMaxEvents = parseInt(sr.getParameter("slackDigestMaxEvents"), SlackDigest.DEFAULT_MAX_EVENTS);
+            suppressWindow = parseInt(sr.getParameter("slackSuppressWindow"), 0);
+            rateLimit = parseInt(sr.getParameter("slackRateLimit"), SlackRateLimiter.DEFAULT_RATE_PER_MINUTE);
+            rateLimitBurst = parseInt(sr.getParameter("slackRateLimitBurst"), SlackRateLimiter.DEFAULT_BURST);
+            breakerThreshold = parseInt(sr.getParameter("slackBreakerThreshold"),
+                    SlackCircuitBreaker.DEFAULT_FAILURE_THRESHOLD);
+            breakerProbeInterval = parseInt(sr.getParameter("slackBreakerProbeInterval"),
+                    SlackCircuitBreaker.DEFAULT_PROBE_INTERVAL_SECONDS);
             if(buildServerUrl == null || buildServerUrl == "") {
                 JenkinsLocationConfiguration jenkinsConfig = new JenkinsLocationConfiguration();
                 buildServerUrl = jenkinsConfig.getUrl();
@@ -177,11 +253,30 @@ public class SlackNotifier extends Notifier {
                 buildServerUrl = buildServerUrl + "/";
             }
             save();
+            applyDeliverySettings();
+            SlackRouteCache.get().invalidateAll();
             return super.configure(sr, formData);
         }
 
+        private void applyDeliverySettings() {
+            SlackDispatcher.get().configure(dispatchThreads, dispatchQueueSize);
+            SlackRateLimiter.get().configure(rateLimit, rateLimitBurst);
+            SlackCircuitBreaker.get().configure(breakerThreshold, breakerProbeInterval);
+        }
+
+        static int parseInt(String value, int defaultValue) {
+            try {
+                int parsed = Integer.parseInt(value.trim());
+                return parsed > 0 ? parsed : defaultValue;
+            } catch (NullPointerException e) {
+                return defaultValue;
+            } catch (NumberFormatException e) {
+                return defaultValue;
+            }
+        }
+
         SlackService getSlackService(final String teamDomain, final String authToken, final String room) {
-            return new StandardSlackService(teamDomain, authToken, room);
+            return new SlackRoute(teamDomain, authToken, room).createService();
         }
 
         @Override
@@ -224,6 +319,9 @@ public class SlackNotifier extends Notifier {
         private boolean showCommitList;
         private boolean includeCustomMessage;
         private String customMessage;
+        private String digestWindow;
+        // compiled on first use; a saved configuration is a new property instance, so this never goes stale
+        private transient volatile CustomMessageTemplate customMessageTemplate;
 
         @DataBoundConstructor
         public SlackJobProperty(String teamDomain,
@@ -241,7 +339,8 @@ public class SlackNotifier extends Notifier {
                                 boolean includeTestSummary,
                                 boolean showCommitList,
                                 boolean includeCustomMessage,
-                                String customMessage) {
+                                String customMessage,
+                                String digestWindow) {
             this.teamDomain = teamDomain;
             this.token = token;
             this.room = room;
@@ -258,6 +357,32 @@ public class SlackNotifier extends Notifier {
             this.showCommitList = showCommitList;
             this.includeCustomMessage = includeCustomMessage;
             this.customMessage = customMessage;
+            this.digestWindow = digestWindow;
+        }
+
+        /**
+         * @deprecated use the constructor that takes a digest window; this one leaves it to the global setting
+         */
+        @Deprecated
+        public SlackJobProperty(String teamDomain,
+                                String token,
+                                String room,
+                                String sendDirectMessage,
+                                boolean startNotification,
+                                boolean notifyAborted,
+                                boolean notifyFailure,
+                                boolean notifyNotBuilt,
+                                boolean notifySuccess,
+                                boolean notifyUnstable,
+                                boolean notifyBackToNormal,
+                                boolean notifyRepeatedFailure,
+                                boolean includeTestSummary,
+                                boolean showCommitList,
+                                boolean includeCustomMessage,
+                                String customMessage) {
+            this(teamDomain, token, room, sendDirectMessage, startNotification, notifyAborted, notifyFailure,
+                    notifyNotBuilt, notifySuccess, notifyUnstable, notifyBackToNormal, notifyRepeatedFailure,
+                    includeTestSummary, showCommitList, includeCustomMessage, customMessage, null);
         }
 
         @Exported
@@ -298,13 +423,11 @@ public class SlackNotifier extends Notifier {
         @Override
         public boolean prebuild(AbstractBuild<?, ?> build, BuildListener listener) {
             if (startNotification) {
-                Map<Descriptor<Publisher>, Publisher> map = build.getProject().getPublishersList().toMap();
-                for (Publisher publisher : map.values()) {
-                    if (publisher instanceof SlackNotifier) {
-                        logger.finer("Invoking Started...");
-                        ((SlackNotifier) publisher).update();
-                        new ActiveNotifier((SlackNotifier) publisher, listener).started(build);
-                    }
+                SlackNotifier notifier = SlackNotifierRegistry.get().getNotifier(build.getProject());
+                if (notifier != null) {
+                    logger.finer("Invoking Started...");
+                    notifier.update();
+                    new ActiveNotifier(notifier, listener).started(build);
                 }
             }
             return super.prebuild(build, listener);
@@ -355,6 +478,23 @@ public class SlackNotifier extends Notifier {
             return customMessage;
         }
 
+        public CustomMessageTemplate getCustomMessageTemplate() {
+            CustomMessageTemplate template = customMessageTemplate;
+            if (template == null) {
+                template = CustomMessageTemplate.compile(customMessage);
+                customMessageTemplate = template;
+            }
+            return template;
+        }
+
+        /**
+         * Digest window in seconds for this job. Blank uses the global setting, 0 turns digests off for the job.
+         */
+        @Exported
+        public String getDigestWindow() {
+            return digestWindow;
+        }
+
         @Extension
         public static final class DescriptorImpl extends JobPropertyDescriptor {
 
@@ -385,14 +525,15 @@ public class SlackNotifier extends Notifier {
                         sr.getParameter("includeTestSummary") != null,
                         sr.getParameter("slackShowCommitList") != null,
                         sr.getParameter("includeCustomMessage") != null,
-                        sr.getParameter("customMessage"));
+                        sr.getParameter("customMessage"),
+                        sr.getParameter("slackDigestWindow"));
             }
 
             public FormValidation doTestConnection(@QueryParameter("slackTeamDomain") final String teamDomain,
                                                    @QueryParameter("slackToken") final String authToken,
                                                    @QueryParameter("slackProjectRoom") final String room) throws FormException {
                 try {
-                    SlackService testSlackService = new StandardSlackService(teamDomain, authToken, room);
+                    SlackService testSlackService = new SlackRoute(teamDomain, authToken, room).createService();
                     String message = "Slack/Jenkins plugin: you're all set.";
                     boolean success = testSlackService.publish(message, "green");
                     return success ? FormValidation.ok("Success") : FormValidation.error("Failure");
@@ -0,0 +1,139 @@
+package jenkins.plugins.slack;
+
+import hudson.Extension;
+import hudson.XmlFile;
+import hudson.model.AbstractProject;
+import hudson.model.Item;
+import hudson.model.Saveable;
+import hudson.model.listeners.ItemListener;
+import hudson.model.listeners.SaveableListener;
+
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Knows which projects publish to Slack, so that build events do not scan the publishers of every project. Projects
+ * are looked up by full name; the first lookup scans the publishers and remembers the result, including that a
+ * project has no {@link SlackNotifier}. Saving, updating, moving or deleting a project drops its entry, and those of
+ * the items within it: the configurations of a matrix project, which share its publishers, or the jobs in a folder.
+ */
+public class SlackNotifierRegistry {
+
+    private static final Registration NONE = new Registration(null);
+
+    private static SlackNotifierRegistry instance;
+
+    private final ConcurrentMap<String, Registration> registrations = new ConcurrentHashMap<String, Registration>();
+    // bumped on every invalidation, so a scan that raced with one is not kept
+    private final AtomicLong version = new AtomicLong();
+
+    public static synchronized SlackNotifierRegistry get() {
+        if (instance == null) {
+            instance = new SlackNotifierRegistry();
+        }
+        return instance;
+    }
+
+    /**
+     * The project's Slack notifier, or null if it has none.
+     */
+    public SlackNotifier getNotifier(AbstractProject<?, ?> project) {
+        return getNotifier(project.getFullName(), project);
+    }
+
+    SlackNotifier getNotifier(String fullName, AbstractProject<?, ?> project) {
+        Registration registration = registrations.get(fullName);
+        if (registration == null) {
+            long current = version.get();
+            SlackNotifier notifier = find(project);
+            registration = notifier != null ? new Registration(notifier) : NONE;
+            registrations.put(fullName, registration);
+            if (version.get() != current) {
+                registrations.remove(fullName, registration);
+            }
+        }
+        return registration.notifier;
+    }
+
+    SlackNotifier find(AbstractProject<?, ?> project) {
+        return project.getPublishersList().get(SlackNotifier.class);
+    }
+
+    public void invalidate(String fullName) {
+        version.incrementAndGet();
+        registrations.remove(fullName);
+        String prefix = fullName + "/";
+        for (Iterator<String> names = registrations.keySet().iterator(); names.hasNext(); ) {
+            if (names.next().startsWith(prefix)) {
+                names.remove();
+            }
+        }
+    }
+
+    public void invalidateAll() {
+        version.incrementAndGet();
+        registrations.clear();
+    }
+
+    int size() {
+        return registrations.size();
+    }
+
+    private static final class Registration {
+
+        private final SlackNotifier notifier;
+
+        Registration(SlackNotifier notifier) {
+            this.notifier = notifier;
+        }
+    }
+
+    /**
+     * Drops a project's entry when its configuration, and with it its publishers, is saved.
+     */
+    @Extension
+    public static class ConfigListener extends SaveableListener {
+
+        @Override
+        public void onChange(Saveable o, XmlFile file) {
+            if (o instanceof Item) {
+                get().invalidate(((Item) o).getFullName());
+            }
+        }
+    }
+
+    /**
+     * Keeps entries in step with projects that are created, updated, moved, deleted or reloaded from disk.
+     */
+    @Extension
+    public static class ProjectListener extends ItemListener {
+
+        @Override
+        public void onCreated(Item item) {
+            get().invalidate(item.getFullName());
+        }
+
+        @Override
+        public void onUpdated(Item item) {
+            get().invalidate(item.getFullName());
+        }
+
+        @Override
+        public void onLocationChanged(Item item, String oldFullName, String newFullName) {
+            get().invalidate(oldFullName);
+            get().invalidate(newFullName);
+        }
+
+        @Override
+        public void onDeleted(Item item) {
+            get().invalidate(item.getFullName());
+        }
+
+        @Override
+        public void onLoaded() {
+            get().invalidateAll();
+        }
+    }
+}
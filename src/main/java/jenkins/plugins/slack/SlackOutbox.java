@@ -0,0 +1,317 @@
+package jenkins.plugins.slack;
+
+import hudson.util.Secret;
+import jenkins.model.Jenkins;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Append-only journal, under JENKINS_HOME, of notifications that have been queued but not yet delivered. Each
+ * notification is written as an "add" record before the build thread moves on and an "ack" record once it has
+ * been delivered or given up on; whatever is left without an ack after a restart is sent again. Delivery is
+ * therefore at least once, and the id of each record is its idempotency key.
+ * <p>
+ * The file is rewritten with only the pending records once enough acks have piled up, and on every load.
+ * <p>
+ * Tokens are written encrypted with the Jenkins instance's secret key, as {@link Secret} stores them in job
+ * configurations, so that the journal and backups of JENKINS_HOME do not give them away.
+ */
+public class SlackOutbox {
+
+    private static final Logger logger = Logger.getLogger(SlackOutbox.class.getName());
+
+    static final String FILE_NAME = "slack-outbox.log";
+    static final int COMPACT_AFTER_ACKS = 1000;
+
+    private static SlackOutbox instance;
+
+    private final File file;
+    private final Map<String, Entry> pending = new LinkedHashMap<String, Entry>();
+    private Writer writer;
+    private int acksSinceCompaction;
+
+    /**
+     * @param file the journal, or null to keep pending notifications in memory only
+     */
+    SlackOutbox(File file) {
+        this.file = file;
+    }
+
+    public static synchronized SlackOutbox get() {
+        if (instance == null) {
+            Jenkins jenkins = Jenkins.getInstance();
+            instance = new SlackOutbox(jenkins != null ? new File(jenkins.getRootDir(), FILE_NAME) : null);
+            instance.load();
+        }
+        return instance;
+    }
+
+    /**
+     * Records a new notification. Returns once the record has been handed to the operating system, so it survives
+     * a restart of Jenkins.
+     */
+    public Entry add(SlackRoute route, SlackMessage message) {
+        return add(new Entry(UUID.randomUUID().toString(), System.currentTimeMillis(), route, message));
+    }
+
+    public synchronized Entry add(Entry entry) {
+        pending.put(entry.getId(), entry);
+        if (file != null) {
+            append(toJson(entry));
+        }
+        return entry;
+    }
+
+    /**
+     * Marks a notification as done, whether it was delivered or given up on.
+     */
+    public synchronized void ack(String id) {
+        if (pending.remove(id) == null) {
+            return;
+        }
+        JSONObject record = new JSONObject();
+        record.put("op", "ack");
+        record.put("id", id);
+        append(record);
+        if (++acksSinceCompaction >= COMPACT_AFTER_ACKS) {
+            compact();
+        }
+    }
+
+    public synchronized List<Entry> getPending() {
+        return new ArrayList<Entry>(pending.values());
+    }
+
+    public synchronized int size() {
+        return pending.size();
+    }
+
+    /**
+     * Reads the journal back, keeping the notifications that were never acknowledged, and compacts it.
+     */
+    synchronized void load() {
+        if (file == null || !file.exists()) {
+            return;
+        }
+        BufferedReader reader = null;
+        try {
+            reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), "UTF-8"));
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.trim().length() == 0) {
+                    continue;
+                }
+                try {
+                    JSONObject record = new JSONObject(line);
+                    if ("ack".equals(record.optString("op"))) {
+                        pending.remove(record.getString("id"));
+                    } else {
+                        Entry entry = fromJson(record);
+                        if (entry != null) {
+                            pending.put(entry.getId(), entry);
+                        }
+                    }
+                } catch (JSONException e) {
+                    // most likely the tail of a write cut short by a crash
+                    logger.warning("Skipping unreadable Slack outbox record: " + line);
+                }
+            }
+        } catch (IOException e) {
+            logger.log(Level.WARNING, "Unable to read Slack outbox " + file, e);
+        } finally {
+            closeQuietly(reader);
+        }
+        if (!pending.isEmpty()) {
+            logger.info(pending.size() + " undelivered Slack notification(s) found in " + file);
+        }
+        compact();
+    }
+
+    /**
+     * Rewrites the journal with only the pending notifications.
+     */
+    synchronized void compact() {
+        acksSinceCompaction = 0;
+        if (file == null) {
+            return;
+        }
+        closeQuietly(writer);
+        writer = null;
+        File tmp = new File(file.getPath() + ".tmp");
+        Writer out = null;
+        try {
+            out = open(tmp, false);
+            for (Entry entry : pending.values()) {
+                out.write(toJson(entry).toString());
+                out.write('\n');
+            }
+            out.close();
+            out = null;
+            if (!tmp.renameTo(file) && !(file.delete() && tmp.renameTo(file))) {
+                throw new IOException("Unable to replace " + file + " with " + tmp);
+            }
+        } catch (IOException e) {
+            logger.log(Level.WARNING, "Unable to compact Slack outbox " + file, e);
+        } finally {
+            closeQuietly(out);
+        }
+    }
+
+    public synchronized void close() {
+        closeQuietly(writer);
+        writer = null;
+    }
+
+    private void append(JSONObject record) {
+        if (file == null) {
+            return;
+        }
+        try {
+            if (writer == null) {
+                writer = open(file, true);
+            }
+            writer.write(record.toString());
+            writer.write('\n');
+            writer.flush();
+        } catch (IOException e) {
+            logger.log(Level.WARNING, "Unable to write to Slack outbox " + file, e);
+            closeQuietly(writer);
+            writer = null;
+        }
+    }
+
+    JSONObject toJson(Entry entry) {
+        JSONArray attachments = new JSONArray();
+        for (SlackMessage.Attachment attachment : entry.getMessage().getAttachments()) {
+            JSONObject part = new JSONObject();
+            part.put("text", attachment.getText());
+            part.put("color", attachment.getColor());
+            attachments.put(part);
+        }
+        SlackRoute route = entry.getRoute();
+        JSONObject record = new JSONObject();
+        record.put("op", "add");
+        record.put("id", entry.getId());
+        record.put("created", entry.getCreated());
+        record.put("teamDomain", route.getTeamDomain());
+        record.put("secretToken", seal(route.getToken()));
+        record.put("room", route.getRoom());
+        record.put("attachments", attachments);
+        record.put("startOf", entry.getMessage().getStartOf());
+        record.put("completionOf", entry.getMessage().getCompletionOf());
+        return record;
+    }
+
+    /**
+     * @return the entry, or null if its token cannot be decrypted, e.g. because the journal was copied from another
+     *         Jenkins instance
+     */
+    Entry fromJson(JSONObject record) {
+        SlackMessage message = new SlackMessage();
+        JSONArray attachments = record.getJSONArray("attachments");
+        for (int i = 0; i < attachments.length(); i++) {
+            JSONObject part = attachments.getJSONObject(i);
+            message.attach(part.optString("text"), part.optString("color"));
+        }
+        message.startOf(record.optString("startOf", null)).completionOf(record.optString("completionOf", null));
+        String token;
+        if (record.has("secretToken")) {
+            token = unseal(record.getString("secretToken"));
+            if (token == null) {
+                logger.warning("Dropping Slack notification " + record.getString("id")
+                        + " from the outbox: its token cannot be decrypted");
+                return null;
+            }
+        } else {
+            // written before tokens were encrypted; rewritten encrypted when the journal is compacted
+            token = record.optString("token");
+        }
+        SlackRoute route = new SlackRoute(record.optString("teamDomain"), token, record.optString("room"));
+        return new Entry(record.getString("id"), record.optLong("created"), route, message);
+    }
+
+    String seal(String token) {
+        return Secret.fromString(token).getEncryptedValue();
+    }
+
+    /**
+     * @return the token, or null if it cannot be decrypted
+     */
+    String unseal(String sealed) {
+        Secret secret = Secret.decrypt(sealed);
+        return secret != null ? secret.getPlainText() : null;
+    }
+
+    private static Writer open(File file, boolean append) throws IOException {
+        File parent = file.getParentFile();
+        if (parent != null && !parent.isDirectory() && !parent.mkdirs()) {
+            throw new IOException("Unable to create " + parent);
+        }
+        return new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file, append), "UTF-8"));
+    }
+
+    private static void closeQuietly(java.io.Closeable closeable) {
+        if (closeable != null) {
+            try {
+                closeable.close();
+            } catch (IOException e) {
+                logger.log(Level.FINE, "Unable to close Slack outbox", e);
+            }
+        }
+    }
+
+    /**
+     * One queued notification.
+     */
+    public static class Entry {
+
+        private final String id;
+        private final long created;
+        private final SlackRoute route;
+        private final SlackMessage message;
+
+        public Entry(String id, long created, SlackRoute route, SlackMessage message) {
+            this.id = id;
+            this.created = created;
+            this.route = route;
+            this.message = message;
+        }
+
+        /**
+         * Unique id of the notification, used to recognise it when it is replayed.
+         */
+        public String getId() {
+            return id;
+        }
+
+        public long getCreated() {
+            return created;
+        }
+
+        public SlackRoute getRoute() {
+            return route;
+        }
+
+        public SlackMessage getMessage() {
+            return message;
+        }
+    }
+}
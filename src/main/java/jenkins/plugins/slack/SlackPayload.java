@@ -0,0 +1,273 @@
+package jenkins.plugins.slack;
+
+import org.apache.commons.httpclient.methods.RequestEntity;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+/**
+ * Form-encoded body of a webhook post, {@code payload=<json>}. The JSON is written character by character straight
+ * into percent-encoded UTF-8 bytes, without building a JSON tree or intermediate strings. The attachments are
+ * encoded once per message; posting to another room only encodes that room's channel name.
+ */
+public class SlackPayload {
+
+    static final String CONTENT_TYPE = "application/x-www-form-urlencoded; charset=UTF-8";
+
+    private static final byte[] HEX = "0123456789ABCDEF".getBytes();
+
+    // scratch space, reused by every message encoded on the same thread
+    private static final ThreadLocal<Writer> writers = new ThreadLocal<Writer>() {
+        @Override
+        protected Writer initialValue() {
+            return new Writer();
+        }
+    };
+
+    private static final byte[] HEAD;
+
+    static {
+        Writer writer = new Writer();
+        writer.ascii("payload=");
+        writer.json("{\"channel\":");
+        HEAD = writer.toByteArray();
+    }
+
+    private final byte[] body;
+
+    private SlackPayload(byte[] body) {
+        this.body = body;
+    }
+
+    public static SlackPayload of(SlackMessage message) {
+        Writer writer = writers.get();
+        writer.reset();
+        writer.json(",\"attachments\":[");
+        boolean first = true;
+        for (SlackMessage.Attachment attachment : message.getAttachments()) {
+            if (!first) {
+                writer.json(",");
+            }
+            first = false;
+            writer.json("{\"fallback\":");
+            int textStart = writer.length();
+            writer.string(attachment.getText());
+            int textEnd = writer.length();
+            writer.json(",\"color\":");
+            writer.string(attachment.getColor());
+            writer.json(",\"fields\":[{\"short\":false,\"value\":");
+            // the same text again, already encoded
+            writer.copy(textStart, textEnd);
+            writer.json("}]}");
+        }
+        writer.json("]}");
+        return new SlackPayload(writer.toByteArray());
+    }
+
+    /**
+     * The request body for one room. It shares the encoded attachments with every other room.
+     */
+    public RequestEntity forRoom(String room) {
+        Writer writer = writers.get();
+        writer.reset();
+        writer.string(room);
+        return new Entity(writer.toByteArray(), body);
+    }
+
+    /**
+     * The complete request body for one room, as it goes over the wire.
+     */
+    public byte[] toByteArray(String room) {
+        Entity entity = (Entity) forRoom(room);
+        byte[] bytes = new byte[(int) entity.getContentLength()];
+        System.arraycopy(HEAD, 0, bytes, 0, HEAD.length);
+        System.arraycopy(entity.channel, 0, bytes, HEAD.length, entity.channel.length);
+        System.arraycopy(body, 0, bytes, HEAD.length + entity.channel.length, body.length);
+        return bytes;
+    }
+
+    private static class Entity implements RequestEntity {
+
+        private final byte[] channel;
+        private final byte[] body;
+
+        Entity(byte[] channel, byte[] body) {
+            this.channel = channel;
+            this.body = body;
+        }
+
+        public boolean isRepeatable() {
+            return true;
+        }
+
+        public void writeRequest(OutputStream out) throws IOException {
+            out.write(HEAD);
+            out.write(channel);
+            out.write(body);
+        }
+
+        public long getContentLength() {
+            return HEAD.length + channel.length + body.length;
+        }
+
+        public String getContentType() {
+            return CONTENT_TYPE;
+        }
+    }
+
+    /**
+     * Growable byte buffer that form-encodes what is written to it.
+     */
+    static class Writer {
+
+        private static final int INITIAL_SIZE = 1024;
+        // a buffer that grew past this for one huge message is not kept around afterwards
+        private static final int MAX_RETAINED_SIZE = 64 * 1024;
+
+        private byte[] buffer = new byte[INITIAL_SIZE];
+        private int length;
+
+        void reset() {
+            length = 0;
+            if (buffer.length > MAX_RETAINED_SIZE) {
+                buffer = new byte[INITIAL_SIZE];
+            }
+        }
+
+        int length() {
+            return length;
+        }
+
+        byte[] toByteArray() {
+            return Arrays.copyOf(buffer, length);
+        }
+
+        /**
+         * Appends ASCII that needs no encoding.
+         */
+        void ascii(String s) {
+            for (int i = 0; i < s.length(); i++) {
+                put(s.charAt(i));
+            }
+        }
+
+        /**
+         * Appends JSON syntax, form-encoded.
+         */
+        void json(String s) {
+            for (int i = 0; i < s.length(); i++) {
+                formChar(s.charAt(i));
+            }
+        }
+
+        /**
+         * Appends a JSON string literal, form-encoded. Null is written as JSON null.
+         */
+        void string(String s) {
+            if (s == null) {
+                json("null");
+                return;
+            }
+            formChar('"');
+            int n = s.length();
+            for (int i = 0; i < n; i++) {
+                char c = s.charAt(i);
+                switch (c) {
+                    case '"':
+                    case '\\':
+                        formChar('\\');
+                        formChar(c);
+                        break;
+                    case '\n':
+                        formChar('\\');
+                        formChar('n');
+                        break;
+                    case '\r':
+                        formChar('\\');
+                        formChar('r');
+                        break;
+                    case '\t':
+                        formChar('\\');
+                        formChar('t');
+                        break;
+                    case '\b':
+                        formChar('\\');
+                        formChar('b');
+                        break;
+                    case '\f':
+                        formChar('\\');
+                        formChar('f');
+                        break;
+                    default:
+                        if (c < 0x20) {
+                            formChar('\\');
+                            formChar('u');
+                            formChar('0');
+                            formChar('0');
+                            formChar(HEX[c >> 4]);
+                            formChar(HEX[c & 0xF]);
+                        } else if (c < 0x80) {
+                            formChar(c);
+                        } else if (c < 0x800) {
+                            percent(0xC0 | (c >> 6));
+                            percent(0x80 | (c & 0x3F));
+                        } else if (c < Character.MIN_SURROGATE || c > Character.MAX_SURROGATE) {
+                            percent(0xE0 | (c >> 12));
+                            percent(0x80 | ((c >> 6) & 0x3F));
+                            percent(0x80 | (c & 0x3F));
+                        } else if (Character.isHighSurrogate(c) && i + 1 < n && Character.isLowSurrogate(s.charAt(i + 1))) {
+                            int codePoint = Character.toCodePoint(c, s.charAt(++i));
+                            percent(0xF0 | (codePoint >> 18));
+                            percent(0x80 | ((codePoint >> 12) & 0x3F));
+                            percent(0x80 | ((codePoint >> 6) & 0x3F));
+                            percent(0x80 | (codePoint & 0x3F));
+                        } else {
+                            // unpaired surrogate, replaced the way String.getBytes does
+                            formChar('?');
+                        }
+                }
+            }
+            formChar('"');
+        }
+
+        /**
+         * Appends a copy of bytes already written.
+         */
+        void copy(int from, int to) {
+            ensure(to - from);
+            System.arraycopy(buffer, from, buffer, length, to - from);
+            length += to - from;
+        }
+
+        // application/x-www-form-urlencoded, as URLEncoder does it
+        private void formChar(int c) {
+            if ((c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9')
+                    || c == '-' || c == '_' || c == '.' || c == '*') {
+                put(c);
+            } else if (c == ' ') {
+                put('+');
+            } else {
+                percent(c);
+            }
+        }
+
+        private void percent(int b) {
+            ensure(3);
+            buffer[length++] = '%';
+            buffer[length++] = HEX[(b >> 4) & 0xF];
+            buffer[length++] = HEX[b & 0xF];
+        }
+
+        private void put(int b) {
+            ensure(1);
+            buffer[length++] = (byte) b;
+        }
+
+        private void ensure(int extra) {
+            if (length + extra > buffer.length) {
+                buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, length + extra));
+            }
+        }
+    }
+}
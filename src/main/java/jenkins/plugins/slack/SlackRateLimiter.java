@@ -0,0 +1,264 @@
+package jenkins.plugins.slack;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+/**
+ * Token bucket per webhook (team domain and token). A post needs a token before it is sent, and a 429 from Slack
+ * pauses the whole webhook for as long as its Retry-After header asks, instead of pushing more requests into the
+ * throttle. Nothing here waits: callers are told how long to wait and come back later, so that a throttled webhook
+ * never holds up a thread that could be posting somewhere else.
+ */
+public class SlackRateLimiter {
+
+    private static final Logger logger = Logger.getLogger(SlackRateLimiter.class.getName());
+
+    // Slack allows roughly one message per second per incoming webhook, with short bursts
+    static final int DEFAULT_RATE_PER_MINUTE = 60;
+    static final int DEFAULT_BURST = 10;
+    static final long DEFAULT_RETRY_AFTER_SECONDS = 30;
+
+    private static SlackRateLimiter instance;
+
+    private final ConcurrentMap<String, Bucket> buckets = new ConcurrentHashMap<String, Bucket>();
+    private volatile int ratePerMinute;
+    private volatile int burst;
+
+    SlackRateLimiter(int ratePerMinute, int burst) {
+        configure(ratePerMinute, burst);
+    }
+
+    public static synchronized SlackRateLimiter get() {
+        if (instance == null) {
+            instance = new SlackRateLimiter(DEFAULT_RATE_PER_MINUTE, DEFAULT_BURST);
+        }
+        return instance;
+    }
+
+    public void configure(int ratePerMinute, int burst) {
+        this.ratePerMinute = ratePerMinute > 0 ? ratePerMinute : DEFAULT_RATE_PER_MINUTE;
+        this.burst = burst > 0 ? burst : DEFAULT_BURST;
+        for (Bucket bucket : buckets.values()) {
+            bucket.configure(this.ratePerMinute, this.burst);
+        }
+    }
+
+    /**
+     * Takes a token for the webhook if one is available.
+     *
+     * @return 0 if the webhook may be posted to now, otherwise how many milliseconds to wait before asking again
+     */
+    public long reserve(String teamDomain, String token) {
+        long waitNanos = getBucket(teamDomain, token).reserve(System.nanoTime());
+        if (waitNanos <= 0) {
+            return 0;
+        }
+        return Math.max(1, TimeUnit.NANOSECONDS.toMillis(waitNanos + TimeUnit.MILLISECONDS.toNanos(1) - 1));
+    }
+
+    /**
+     * Records a 429 from Slack and pauses the webhook.
+     *
+     * @param retryAfterSeconds the Retry-After value, or a negative number if Slack did not send one
+     * @return how many milliseconds the webhook is paused for
+     */
+    public long throttled(String teamDomain, String token, long retryAfterSeconds) {
+        if (retryAfterSeconds < 0) {
+            retryAfterSeconds = DEFAULT_RETRY_AFTER_SECONDS;
+        }
+        logger.warning("Slack is throttling " + teamDomain + ", pausing posts for " + retryAfterSeconds + "s");
+        getBucket(teamDomain, token).pause(System.nanoTime(), TimeUnit.SECONDS.toNanos(retryAfterSeconds));
+        return TimeUnit.SECONDS.toMillis(retryAfterSeconds);
+    }
+
+    /**
+     * Parses a Retry-After header, which Slack sends as a number of seconds.
+     *
+     * @return the delay in seconds, or -1 if the header is missing or not a number
+     */
+    static long parseRetryAfter(String value) {
+        if (value == null) {
+            return -1;
+        }
+        try {
+            return Math.max(0, Long.parseLong(value.trim()));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    public List<Status> getStatus() {
+        long now = System.nanoTime();
+        List<Status> status = new ArrayList<Status>();
+        for (Map.Entry<String, Bucket> entry : buckets.entrySet()) {
+            status.add(entry.getValue().status(now));
+        }
+        return status;
+    }
+
+    public int getRatePerMinute() {
+        return ratePerMinute;
+    }
+
+    public int getBurst() {
+        return burst;
+    }
+
+    private Bucket getBucket(String teamDomain, String token) {
+        String key = teamDomain + "|" + token;
+        Bucket bucket = buckets.get(key);
+        if (bucket == null) {
+            Bucket created = new Bucket(teamDomain, token, ratePerMinute, burst);
+            bucket = buckets.putIfAbsent(key, created);
+            if (bucket == null) {
+                bucket = created;
+            }
+        }
+        return bucket;
+    }
+
+    /**
+     * Masks all but the start of a token so that it can be shown in diagnostics.
+     */
+    static String mask(String token) {
+        if (token == null || token.length() <= 4) {
+            return "****";
+        }
+        return token.substring(0, 4) + "****";
+    }
+
+    static class Bucket {
+
+        private final String teamDomain;
+        private final String token;
+        private double tokensPerNano;
+        private int capacity;
+        private double tokens;
+        private long refilledAt;
+        private long pausedUntil;
+        private boolean paused;
+        private long throttledCount;
+
+        Bucket(String teamDomain, String token, int ratePerMinute, int burst) {
+            this.teamDomain = teamDomain;
+            this.token = token;
+            this.refilledAt = System.nanoTime();
+            configure(ratePerMinute, burst);
+            this.tokens = capacity;
+        }
+
+        synchronized void configure(int ratePerMinute, int burst) {
+            this.tokensPerNano = ratePerMinute / (double) TimeUnit.MINUTES.toNanos(1);
+            this.capacity = burst;
+            this.tokens = Math.min(tokens, capacity);
+        }
+
+        /**
+         * Takes a token if one is available.
+         *
+         * @return 0 if a token was taken, otherwise how long to wait before asking again
+         */
+        synchronized long reserve(long now) {
+            if (paused) {
+                if (now - pausedUntil < 0) {
+                    return pausedUntil - now;
+                }
+                paused = false;
+            }
+            // callers read the clock before taking the lock, so now may be slightly behind the last refill
+            if (now - refilledAt > 0) {
+                tokens = Math.min(capacity, tokens + (now - refilledAt) * tokensPerNano);
+                refilledAt = now;
+            }
+            if (tokens >= 1) {
+                tokens -= 1;
+                return 0;
+            }
+            return Math.max(1, (long) Math.ceil((1 - tokens) / tokensPerNano));
+        }
+
+        synchronized void pause(long now, long durationNanos) {
+            long until = now + durationNanos;
+            if (!paused || until - pausedUntil > 0) {
+                pausedUntil = until;
+            }
+            paused = true;
+            tokens = 0;
+            // nothing accrues while paused, so the webhook does not get a full burst the moment the pause ends
+            refilledAt = pausedUntil;
+            throttledCount++;
+        }
+
+        synchronized Status status(long now) {
+            long pausedForMillis = paused && now - pausedUntil < 0 ? TimeUnit.NANOSECONDS.toMillis(pausedUntil - now) : 0;
+            double available = Math.min(capacity, tokens + Math.max(0, now - refilledAt) * tokensPerNano);
+            return new Status(teamDomain, mask(token), available, capacity, pausedForMillis, throttledCount);
+        }
+    }
+
+    /**
+     * Point-in-time view of one webhook's bucket.
+     */
+    public static class Status {
+
+        private final String teamDomain;
+        private final String token;
+        private final double availableTokens;
+        private final int capacity;
+        private final long pausedForMillis;
+        private final long throttledCount;
+
+        Status(String teamDomain, String token, double availableTokens, int capacity, long pausedForMillis,
+               long throttledCount) {
+            this.teamDomain = teamDomain;
+            this.token = token;
+            this.availableTokens = availableTokens;
+            this.capacity = capacity;
+            this.pausedForMillis = pausedForMillis;
+            this.throttledCount = throttledCount;
+        }
+
+        public String getTeamDomain() {
+            return teamDomain;
+        }
+
+        /**
+         * The webhook token, masked.
+         */
+        public String getToken() {
+            return token;
+        }
+
+        public int getAvailableTokens() {
+            return (int) availableTokens;
+        }
+
+        public int getCapacity() {
+            return capacity;
+        }
+
+        public long getPausedForMillis() {
+            return pausedForMillis;
+        }
+
+        public boolean isPaused() {
+            return pausedForMillis > 0;
+        }
+
+        public long getThrottledCount() {
+            return throttledCount;
+        }
+
+        @Override
+        public String toString() {
+            return teamDomain + " (" + token + "): " + getAvailableTokens() + "/" + capacity + " tokens"
+                    + (isPaused() ? ", paused for " + pausedForMillis + "ms" : "") + ", throttled " + throttledCount
+                    + " times";
+        }
+    }
+}
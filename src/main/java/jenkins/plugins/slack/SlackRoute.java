@@ -0,0 +1,91 @@
+package jenkins.plugins.slack;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Where a notification goes: a Slack team, the integration token and the room list, after job settings, global
+ * defaults and direct messages have been resolved.
+ */
+public class SlackRoute {
+
+    private final String teamDomain;
+    private final String token;
+    private final String room;
+
+    public SlackRoute(String teamDomain, String token, String room) {
+        this.teamDomain = teamDomain;
+        this.token = token;
+        this.room = room;
+    }
+
+    public String getTeamDomain() {
+        return teamDomain;
+    }
+
+    public String getToken() {
+        return token;
+    }
+
+    public String getRoom() {
+        return room;
+    }
+
+    /**
+     * The rooms of the room list, without separators or blank names, e.g. "#ops" and "@someone" for
+     * "#ops, @someone,". An empty list has a single blank room: the channel the webhook posts to by default.
+     */
+    public List<String> getRooms() {
+        List<String> rooms = new ArrayList<String>();
+        if (room != null) {
+            for (String name : room.split("[,; ]+")) {
+                name = name.trim();
+                if (name.length() > 0) {
+                    rooms.add(name);
+                }
+            }
+        }
+        return rooms.isEmpty() ? Collections.singletonList("") : rooms;
+    }
+
+    /**
+     * A service for the Web API if the token is a bot token, or for the Jenkins CI webhook otherwise.
+     */
+    public SlackService createService() {
+        if (WebApiSlackService.isApiToken(token)) {
+            return new WebApiSlackService(teamDomain, token, room);
+        }
+        return new StandardSlackService(teamDomain, token, room);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof SlackRoute)) {
+            return false;
+        }
+        SlackRoute that = (SlackRoute) o;
+        return equal(teamDomain, that.teamDomain) && equal(token, that.token) && equal(room, that.room);
+    }
+
+    @Override
+    public int hashCode() {
+        int result = teamDomain != null ? teamDomain.hashCode() : 0;
+        result = 31 * result + (token != null ? token.hashCode() : 0);
+        result = 31 * result + (room != null ? room.hashCode() : 0);
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        // the token is a credential, keep it out of the logs
+        return room + " on " + teamDomain;
+    }
+
+    private static boolean equal(String a, String b) {
+        return a == null ? b == null : a.equals(b);
+    }
+}
@@ -0,0 +1,185 @@
+package jenkins.plugins.slack;
+
+import hudson.EnvVars;
+import hudson.Extension;
+import hudson.Util;
+import hudson.XmlFile;
+import hudson.model.AbstractProject;
+import hudson.model.Item;
+import hudson.model.Saveable;
+import hudson.model.listeners.ItemListener;
+import hudson.model.listeners.SaveableListener;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Caches the part of a project's notification route that does not depend on the build: team domain, token and
+ * rooms after falling back to the global settings, and the direct message mode. Entries are keyed by project and
+ * stamped with a configuration version, so saving the job or the global configuration makes them stale.
+ * <p>
+ * Only values that contain a {@code $} are expanded against the build environment, and the environment is only
+ * computed when one of them does.
+ */
+public class SlackRouteCache {
+
+    private static SlackRouteCache instance;
+
+    private final ConcurrentMap<String, Template> templates = new ConcurrentHashMap<String, Template>();
+    // bumped whenever the global configuration is saved
+    private final AtomicLong version = new AtomicLong();
+
+    public static synchronized SlackRouteCache get() {
+        if (instance == null) {
+            instance = new SlackRouteCache();
+        }
+        return instance;
+    }
+
+    public Template getTemplate(AbstractProject<?, ?> project, SlackNotifier notifier) {
+        SlackNotifier.SlackJobProperty property = project.getProperty(SlackNotifier.SlackJobProperty.class);
+        long current = version.get();
+        String key = project.getFullName();
+        Template template = templates.get(key);
+        if (template == null || !template.isCurrent(property, notifier, current)) {
+            template = new Template(property, notifier, current);
+            templates.put(key, template);
+        }
+        return template;
+    }
+
+    /**
+     * Forgets the route of one project, e.g. because its configuration was saved.
+     */
+    public void invalidate(String fullName) {
+        templates.remove(fullName);
+    }
+
+    /**
+     * Forgets every route, e.g. because the global configuration was saved.
+     */
+    public void invalidateAll() {
+        version.incrementAndGet();
+        templates.clear();
+    }
+
+    int size() {
+        return templates.size();
+    }
+
+    /**
+     * The build-independent part of a route.
+     */
+    public static class Template {
+
+        private final SlackNotifier.SlackJobProperty property;
+        private final SlackNotifier notifier;
+        private final long version;
+        private final String teamDomain;
+        private final String token;
+        private final String room;
+        private final String directMessage;
+        private final boolean expandTeamDomain;
+        private final boolean expandToken;
+        private final boolean expandRoom;
+
+        Template(SlackNotifier.SlackJobProperty property, SlackNotifier notifier, long version) {
+            this.property = property;
+            this.notifier = notifier;
+            this.version = version;
+            String jobTeamDomain = property != null ? Util.fixEmpty(property.getTeamDomain()) : null;
+            String jobToken = property != null ? Util.fixEmpty(property.getToken()) : null;
+            String jobRoom = property != null ? Util.fixEmpty(property.getRoom()) : null;
+            String jobDirectMessage = property != null ? Util.fixEmpty(property.getSendDirectMessage()) : null;
+            // Only job values are expanded; the global values are used as they are
+            this.teamDomain = jobTeamDomain != null ? jobTeamDomain : notifier.getTeamDomain();
+            this.token = jobToken != null ? jobToken : notifier.getAuthToken();
+            this.room = jobRoom != null ? jobRoom : notifier.getRoom();
+            this.directMessage = jobDirectMessage != null ? jobDirectMessage : "";
+            this.expandTeamDomain = hasVariables(jobTeamDomain);
+            this.expandToken = hasVariables(jobToken);
+            this.expandRoom = hasVariables(jobRoom);
+        }
+
+        private static boolean hasVariables(String value) {
+            return value != null && value.indexOf('$') >= 0;
+        }
+
+        boolean isCurrent(SlackNotifier.SlackJobProperty property, SlackNotifier notifier, long version) {
+            return this.property == property && this.notifier == notifier && this.version == version;
+        }
+
+        /**
+         * Whether any value refers to build variables, in which case the build environment must be passed to
+         * {@link #getTeamDomain(EnvVars)} and friends.
+         */
+        public boolean needsEnvironment() {
+            return expandTeamDomain || expandToken || expandRoom;
+        }
+
+        public String getTeamDomain(EnvVars env) {
+            return expandTeamDomain ? expand(teamDomain, env) : teamDomain;
+        }
+
+        public String getToken(EnvVars env) {
+            return expandToken ? expand(token, env) : token;
+        }
+
+        public String getRoom(EnvVars env) {
+            return expandRoom ? expand(room, env) : room;
+        }
+
+        /**
+         * The direct message mode: "user", "both", or empty for channels only.
+         */
+        public String getDirectMessage() {
+            return directMessage;
+        }
+
+        public boolean sendsDirectMessage() {
+            return directMessage.equals("user") || directMessage.equals("both");
+        }
+
+        private static String expand(String value, EnvVars env) {
+            return env != null ? env.expand(value) : value;
+        }
+    }
+
+    /**
+     * Drops a project's cached route when its configuration is saved.
+     */
+    @Extension
+    public static class ConfigListener extends SaveableListener {
+
+        @Override
+        public void onChange(Saveable o, XmlFile file) {
+            if (o instanceof Item) {
+                get().invalidate(((Item) o).getFullName());
+            }
+        }
+    }
+
+    /**
+     * Drops cached routes of projects that are updated, renamed or deleted.
+     */
+    @Extension
+    public static class ProjectListener extends ItemListener {
+
+        @Override
+        public void onUpdated(Item item) {
+            get().invalidate(item.getFullName());
+        }
+
+        @Override
+        public void onRenamed(Item item, String oldName, String newName) {
+            // the old full name is not at hand, and renames are rare
+            get().invalidateAll();
+        }
+
+        @Override
+        public void onDeleted(Item item) {
+            get().invalidate(item.getFullName());
+        }
+    }
+}
@@ -4,4 +4,10 @@ public interface SlackService {
     boolean publish(String message);
 
     boolean publish(String message, String color);
+
+    /**
+     * Publishes the message, with all of its attachments in a single post, to every configured room and reports
+     * how each one went.
+     */
+    PublishResult deliver(SlackMessage message);
 }
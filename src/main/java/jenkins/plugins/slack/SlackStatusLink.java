@@ -0,0 +1,50 @@
+package jenkins.plugins.slack;
+
+import hudson.Extension;
+import hudson.model.ManagementLink;
+
+import java.util.List;
+
+/**
+ * "Manage Jenkins" page showing the state of Slack delivery, for diagnosing missing or delayed notifications.
+ */
+@Extension
+public class SlackStatusLink extends ManagementLink {
+
+    public String getIconFileName() {
+        return "network.png";
+    }
+
+    public String getUrlName() {
+        return "slack-status";
+    }
+
+    public String getDisplayName() {
+        return "Slack Delivery Status";
+    }
+
+    @Override
+    public String getDescription() {
+        return "Rate limits, circuit breakers and queues used to deliver Slack notifications.";
+    }
+
+    public List<SlackRateLimiter.Status> getRateLimits() {
+        return SlackRateLimiter.get().getStatus();
+    }
+
+    public SlackRateLimiter getRateLimiter() {
+        return SlackRateLimiter.get();
+    }
+
+    public List<SlackCircuitBreaker.Status> getCircuitBreakers() {
+        return SlackCircuitBreaker.get().getStatus();
+    }
+
+    public SlackCircuitBreaker getCircuitBreaker() {
+        return SlackCircuitBreaker.get();
+    }
+
+    public SlackDispatcher getDispatcher() {
+        return SlackDispatcher.get();
+    }
+}
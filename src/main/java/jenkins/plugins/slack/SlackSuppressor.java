@@ -0,0 +1,136 @@
+package jenkins.plugins.slack;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Holds back notifications that repeat within the suppression window: the same result transition of the same job,
+ * to the same room. A flaky job going SUCCESS, FAILURE, SUCCESS, FAILURE posts "Failure" and "Back to normal" once
+ * each per window, and a retriggered build does not post the same text again. What was held back is counted and
+ * summarised in the next post that does go out for the job and room.
+ * <p>
+ * Post times are kept in two buckets, each one window wide: the current one and the one before. Anything posted
+ * within the window is in one of them, and older entries are dropped a whole bucket at a time.
+ */
+public class SlackSuppressor {
+
+    // keys remembered per bucket, and jobs and rooms with held back notifications; past this, nothing is held back
+    static final int MAX_KEYS = 10000;
+
+    private static SlackSuppressor instance;
+
+    private Map<String, Long> current = new HashMap<String, Long>();
+    private Map<String, Long> previous = new HashMap<String, Long>();
+    private long bucket;
+    private long windowMillis;
+    // held back notifications per job and room, by status, in the order they were first seen
+    private final Map<String, Map<String, Integer>> suppressed = new HashMap<String, Map<String, Integer>>();
+    private long suppressedTotal;
+
+    SlackSuppressor() {
+    }
+
+    public static synchronized SlackSuppressor get() {
+        if (instance == null) {
+            instance = new SlackSuppressor();
+        }
+        return instance;
+    }
+
+    /**
+     * Decides whether a notification goes out to a room. If it does, it is remembered as posted; if not, it is
+     * counted for the summary.
+     *
+     * @param transition identifies the change of result, e.g. {@code SUCCESS>FAILURE}
+     * @param status how the notification describes the build, e.g. "Back to normal", for the summary
+     * @return true if the notification should be held back
+     */
+    public synchronized boolean suppress(String job, String room, String transition, String status,
+                                         int windowSeconds, long now) {
+        if (windowSeconds <= 0) {
+            return false;
+        }
+        advance(windowSeconds * 1000L, now);
+        String key = job + '\n' + room + '\n' + transition;
+        Long posted = current.get(key);
+        if (posted == null) {
+            posted = previous.get(key);
+        }
+        if (posted != null && now - posted < windowMillis) {
+            String jobRoom = job + '\n' + room;
+            Map<String, Integer> counts = suppressed.get(jobRoom);
+            if (counts == null) {
+                if (suppressed.size() >= MAX_KEYS) {
+                    return false;
+                }
+                counts = new LinkedHashMap<String, Integer>();
+                suppressed.put(jobRoom, counts);
+            }
+            Integer count = counts.get(status);
+            counts.put(status, count == null ? 1 : count + 1);
+            suppressedTotal++;
+            return true;
+        }
+        if (current.size() < MAX_KEYS) {
+            current.put(key, now);
+        }
+        return false;
+    }
+
+    /**
+     * Moves on to the bucket holding {@code now}, dropping everything posted before the previous one.
+     */
+    private void advance(long windowMillis, long now) {
+        long index = now / windowMillis;
+        if (windowMillis != this.windowMillis) {
+            // the window was reconfigured: the buckets no longer line up, start over
+            this.windowMillis = windowMillis;
+            current.clear();
+            previous.clear();
+        } else if (index == bucket) {
+            return;
+        } else if (index == bucket + 1) {
+            Map<String, Long> expired = previous;
+            previous = current;
+            current = expired;
+            current.clear();
+        } else {
+            current.clear();
+            previous.clear();
+        }
+        bucket = index;
+    }
+
+    /**
+     * Returns and forgets the summary of what was held back for a job and room, e.g.
+     * "Held back 5 similar notifications: Failure (3), Back to normal (2)", or null if nothing was.
+     */
+    public synchronized String takeSummary(String job, String room) {
+        Map<String, Integer> counts = suppressed.remove(job + '\n' + room);
+        if (counts == null) {
+            return null;
+        }
+        int total = 0;
+        StringBuilder statuses = new StringBuilder();
+        for (Map.Entry<String, Integer> count : counts.entrySet()) {
+            total += count.getValue();
+            if (statuses.length() > 0) {
+                statuses.append(", ");
+            }
+            statuses.append(count.getKey()).append(" (").append(count.getValue()).append(')');
+        }
+        return "Held back " + total + " similar notification" + (total == 1 ? "" : "s") + ": " + statuses;
+    }
+
+    /**
+     * Notifications held back since Jenkins started.
+     */
+    public synchronized long getSuppressed() {
+        return suppressedTotal;
+    }
+
+    synchronized int getRemembered() {
+        return current.size() + previous.size();
+    }
+}
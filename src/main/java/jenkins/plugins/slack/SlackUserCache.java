@@ -0,0 +1,138 @@
+package jenkins.plugins.slack;
+
+import hudson.Extension;
+import hudson.XmlFile;
+import hudson.model.Saveable;
+import hudson.model.User;
+import hudson.model.listeners.SaveableListener;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Caches the Slack username of Jenkins users by user ID, so that direct messages do not load the user on every
+ * build. Users without a Slack username are cached too, as an empty string. Saving a user drops its entry; the least
+ * recently used entries are dropped once the cache is full.
+ */
+public class SlackUserCache {
+
+    static final int DEFAULT_CAPACITY = 1024;
+
+    private static SlackUserCache instance;
+
+    private final Map<String, String> usernames;
+    // bumped on every invalidation, so a lookup that raced with one is not cached
+    private long generation;
+
+    public static synchronized SlackUserCache get() {
+        if (instance == null) {
+            instance = new SlackUserCache(DEFAULT_CAPACITY);
+        }
+        return instance;
+    }
+
+    SlackUserCache(final int capacity) {
+        usernames = new LinkedHashMap<String, String>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+                return size() > capacity;
+            }
+        };
+    }
+
+    /**
+     * The Slack username of a Jenkins user, or an empty string if the user does not exist or has none.
+     */
+    public String getUsername(String userId) {
+        if (userId == null) {
+            return "";
+        }
+        long loadedAt;
+        synchronized (this) {
+            String username = usernames.get(userId);
+            if (username != null) {
+                return username;
+            }
+            loadedAt = generation;
+        }
+        // users are loaded outside the lock, as that may read their configuration from disk
+        String username = load(userId);
+        store(userId, username, loadedAt);
+        return username;
+    }
+
+    /**
+     * The Slack usernames of several Jenkins users, in the order given. Users without one map to an empty string.
+     */
+    public Map<String, String> getUsernames(Collection<String> userIds) {
+        Map<String, String> result = new LinkedHashMap<String, String>();
+        List<String> missing = new ArrayList<String>();
+        long loadedAt;
+        synchronized (this) {
+            for (String userId : userIds) {
+                if (result.containsKey(userId)) {
+                    continue;
+                }
+                String username = userId != null ? usernames.get(userId) : "";
+                if (username == null) {
+                    missing.add(userId);
+                }
+                result.put(userId, username);
+            }
+            loadedAt = generation;
+        }
+        for (String userId : missing) {
+            String username = load(userId);
+            store(userId, username, loadedAt);
+            result.put(userId, username);
+        }
+        return result;
+    }
+
+    private synchronized void store(String userId, String username, long loadedAt) {
+        if (generation == loadedAt) {
+            usernames.put(userId, username);
+        }
+    }
+
+    String load(String userId) {
+        User user = User.get(userId, false);
+        if (user == null) {
+            return "";
+        }
+        SlackNotifier.SlackUserProperty property = user.getProperty(SlackNotifier.SlackUserProperty.class);
+        return property != null && property.getUsername() != null ? property.getUsername() : "";
+    }
+
+    public synchronized void invalidate(String userId) {
+        generation++;
+        usernames.remove(userId);
+    }
+
+    public synchronized void invalidateAll() {
+        generation++;
+        usernames.clear();
+    }
+
+    synchronized int size() {
+        return usernames.size();
+    }
+
+    /**
+     * Drops a user's cached username when the user, and with it their {@link SlackNotifier.SlackUserProperty}, is
+     * saved.
+     */
+    @Extension
+    public static class UserListener extends SaveableListener {
+
+        @Override
+        public void onChange(Saveable o, XmlFile file) {
+            if (o instanceof User) {
+                get().invalidate(((User) o).getId());
+            }
+        }
+    }
+}
@@ -1,28 +1,37 @@
 package jenkins.plugins.slack;
 
+import org.apache.commons.httpclient.Header;
 import org.apache.commons.httpclient.HttpClient;
 import org.apache.commons.httpclient.HttpStatus;
 import org.apache.commons.httpclient.methods.PostMethod;
+import org.apache.commons.httpclient.methods.RequestEntity;
 
-import org.json.JSONObject;
-import org.json.JSONArray;
-
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
-import jenkins.model.Jenkins;
-import hudson.ProxyConfiguration;
-import org.apache.commons.httpclient.UsernamePasswordCredentials;
-import org.apache.commons.httpclient.auth.AuthScope;
+import jenkins.plugins.slack.PublishResult.RoomResult;
 
 public class StandardSlackService implements SlackService {
 
     private static final Logger logger = Logger.getLogger(StandardSlackService.class.getName());
 
+    static final int SC_TOO_MANY_REQUESTS = 429;
+    // longest throttle publish() waits out before it reports the room as failed
+    static final long MAX_PUBLISH_WAIT_MILLIS = 5000;
+
     private String host = "slack.com";
+    // replaces https://<team domain>.<host> when set, e.g. to post to a local stand-in for Slack
+    private String baseUrl;
     private String teamDomain;
     private String token;
     private String[] roomIds;
+    private SlackRateLimiter rateLimiter = SlackRateLimiter.get();
+    private SlackCircuitBreaker circuitBreaker = SlackCircuitBreaker.get();
+    private SlackMetrics metrics = SlackMetrics.get();
 
     public StandardSlackService(String teamDomain, String token, String roomId) {
         super();
@@ -35,77 +44,186 @@ public class StandardSlackService implements SlackService {
         return publish(message, "warning");
     }
 
+    /**
+     * Posts right away, for callers such as the test connection button that have nobody to hand a throttled room
+     * back to: a short throttle is waited out here, on the caller's thread.
+     */
     public boolean publish(String message, String color) {
-        boolean result = true;
-        for (String roomId : roomIds) {
-            String url = "https://" + teamDomain + "." + host + "/services/hooks/jenkins-ci?token=" + token;
-            logger.info("Posting: to " + roomId + " on " + teamDomain + " using " + url +": " + message + " " + color);
-            HttpClient client = getHttpClient();
-            PostMethod post = new PostMethod(url);
-            JSONObject json = new JSONObject();
+        final SlackMessage slackMessage = SlackMessage.of(message, color);
+        return deliverWaiting(new RoomDelivery() {
+            public PublishResult deliver(String[] rooms) {
+                return StandardSlackService.this.deliver(slackMessage, rooms);
+            }
+        }, roomIds).isSuccess();
+    }
 
-            try {
-                JSONObject field = new JSONObject();
-                field.put("short", false);
-                field.put("value", message);
-
-                JSONArray fields = new JSONArray();
-                fields.put(field);
-
-                JSONObject attachment = new JSONObject();
-                attachment.put("fallback", message);
-                attachment.put("color", color);
-                attachment.put("fields", fields);
-                JSONArray attachments = new JSONArray();
-                attachments.put(attachment);
-
-                json.put("channel", roomId);
-                json.put("attachments", attachments);
-
-                post.addParameter("payload", json.toString());
-                post.getParams().setContentCharset("UTF-8");
-                int responseCode = client.executeMethod(post);
-                String response = post.getResponseBodyAsString();
-                if (responseCode != HttpStatus.SC_OK) {
-                    // Some rooms might not succeed (direct message off a triggered build), so overall the publish
-                    // failed, but we should still try the other rooms in our list
-                    logger.warning("Slack post may have failed. Response: " + response);
-                    result = false;
+    /**
+     * Posts to some rooms of a service.
+     */
+    interface RoomDelivery {
+
+        PublishResult deliver(String[] rooms);
+    }
+
+    /**
+     * Posts to the rooms, trying throttled rooms again once the throttle lifts, as long as that is within
+     * {@link #MAX_PUBLISH_WAIT_MILLIS}. Rooms throttled for longer are returned as they are.
+     */
+    static PublishResult deliverWaiting(RoomDelivery delivery, String[] rooms) {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(MAX_PUBLISH_WAIT_MILLIS);
+        List<RoomResult> results = new ArrayList<RoomResult>(rooms.length);
+        while (true) {
+            List<String> throttled = new ArrayList<String>();
+            List<RoomResult> held = new ArrayList<RoomResult>();
+            long wait = 0;
+            for (RoomResult room : delivery.deliver(rooms).getRooms()) {
+                if (room.isThrottled()) {
+                    throttled.add(room.getRoom());
+                    held.add(room);
+                    wait = Math.max(wait, room.getRetryAfterMillis());
+                } else {
+                    results.add(room);
                 }
-            } catch (Exception e) {
-                // A hard error (like no connectivity or a malformed responses) should terminate the publish call
-                logger.log(Level.SEVERE, "Error posting to Slack", e);
-                return false;
-            } finally {
-                post.releaseConnection();
+            }
+            if (throttled.isEmpty()) {
+                break;
+            }
+            if (System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(wait) - deadline > 0) {
+                results.addAll(held);
+                break;
+            }
+            try {
+                Thread.sleep(wait);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                results.addAll(held);
+                break;
+            }
+            rooms = throttled.toArray(new String[throttled.size()]);
+        }
+        return new PublishResult(results);
+    }
+
+    /**
+     * Posts to the rooms one after the other: the {@link SlackDispatcher} hands over one room at a time and posts to
+     * different rooms in parallel. A room that fails, whether Slack rejects it or the request errors out, never
+     * cancels the others. A room held back by the rate limit or a 429 is handed back as throttled, not waited out.
+     */
+    public PublishResult deliver(SlackMessage message) {
+        return deliver(message, roomIds);
+    }
+
+    private PublishResult deliver(SlackMessage message, String[] roomIds) {
+        HttpClient client = getHttpClient();
+        // Encoded once; each room only adds its channel
+        SlackPayload payload = SlackPayload.of(message);
+        List<RoomResult> results = new ArrayList<RoomResult>(roomIds.length);
+        for (String roomId : roomIds) {
+            results.add(post(client, roomId, message, payload));
+        }
+        return record(results);
+    }
+
+    private PublishResult record(List<RoomResult> results) {
+        for (RoomResult result : results) {
+            // a throttled room has not been tried yet; it is counted once it has
+            if (!result.isThrottled()) {
+                metrics.recordResult(teamDomain, result.getRoom(), result.isSuccess());
             }
         }
+        return new PublishResult(results);
+    }
+
+    private RoomResult post(HttpClient client, String roomId, SlackMessage message, SlackPayload payload) {
+        // While the webhook's circuit is open the post fails at once; the dispatcher treats that as retryable
+        if (!circuitBreaker.allowRequest(teamDomain, token)) {
+            logger.fine("Slack circuit breaker for " + teamDomain + " is open, not posting to " + roomId);
+            return RoomResult.failed(roomId, new IOException("Circuit breaker for " + teamDomain + " is open"));
+        }
+        RoomResult result = send(client, roomId, message, payload);
+        if (Thread.currentThread().isInterrupted() || result.isThrottled()) {
+            // cut short on our side, or held back by the throttle, which says nothing about the webhook's health
+            return result;
+        }
+        if (SlackCircuitBreaker.isWebhookFailure(result.getStatusCode())) {
+            circuitBreaker.recordFailure(teamDomain, token);
+        } else if (result.getStatusCode() != SC_TOO_MANY_REQUESTS) {
+            circuitBreaker.recordSuccess(teamDomain, token);
+        }
         return result;
     }
 
-    private HttpClient getHttpClient() {
-        HttpClient client = new HttpClient();
-        if (Jenkins.getInstance() != null) {
-            ProxyConfiguration proxy = Jenkins.getInstance().proxy;
-            if (proxy != null) {
-                client.getHostConfiguration().setProxy(proxy.name, proxy.port);
-                String username = proxy.getUserName();
-                String password = proxy.getPassword();
-                // Consider it to be passed if username specified. Sufficient?
-                if (username != null && !"".equals(username.trim())) {
-                    logger.info("Using proxy authentication (user=" + username + ")");
-                    // http://hc.apache.org/httpclient-3.x/authentication.html#Proxy_Authentication
-                    // and
-                    // http://svn.apache.org/viewvc/httpcomponents/oac.hc3x/trunk/src/examples/BasicAuthenticationExample.java?view=markup
-                    client.getState().setProxyCredentials(AuthScope.ANY,
-                        new UsernamePasswordCredentials(username, password));
-                }
+    private RoomResult send(HttpClient client, String roomId, SlackMessage message, SlackPayload payload) {
+        // A post that has to wait for the rate limit is handed back to the caller to try again later, so the
+        // thread is free to post to other webhooks in the meantime
+        long wait = rateLimiter.reserve(teamDomain, token);
+        if (wait > 0) {
+            logger.fine("Slack rate limit for " + teamDomain + " reached, not posting to " + roomId + " for " + wait
+                    + "ms");
+            return RoomResult.throttled(roomId, "Rate limited", wait);
+        }
+        String url = getBaseUrl() + "/services/hooks/jenkins-ci?token=" + token;
+        logger.info("Posting: to " + roomId + " on " + teamDomain + " using " + url +": " + message);
+        PostMethod post = new PostMethod(url);
+        long started = System.nanoTime();
+        try {
+            RequestEntity entity = payload.forRoom(roomId);
+            post.setRequestEntity(entity);
+            int responseCode = client.executeMethod(post);
+            String response = post.getResponseBodyAsString();
+            metrics.recordPost(teamDomain, roomId, responseCode, elapsedMillis(started), entity.getContentLength());
+            if (responseCode == SC_TOO_MANY_REQUESTS) {
+                Header retryAfter = post.getResponseHeader("Retry-After");
+                long pause = rateLimiter.throttled(teamDomain, token,
+                        SlackRateLimiter.parseRetryAfter(retryAfter != null ? retryAfter.getValue() : null));
+                return RoomResult.throttled(roomId, response, pause);
+            }
+            if (responseCode != HttpStatus.SC_OK) {
+                // Some rooms might not succeed (direct message off a triggered build), so overall the publish
+                // failed, but the other rooms in our list are unaffected
+                logger.warning("Slack post to " + roomId + " may have failed. Response: " + response);
+                return RoomResult.rejected(roomId, responseCode, response);
             }
+            return RoomResult.delivered(roomId, responseCode);
+        } catch (Exception e) {
+            // A hard error (like no connectivity or a malformed response) only fails this room
+            logger.log(Level.SEVERE, "Error posting to Slack", e);
+            metrics.recordPost(teamDomain, roomId, SlackMetrics.NO_RESPONSE, elapsedMillis(started), 0);
+            return RoomResult.failed(roomId, e);
+        } finally {
+            post.releaseConnection();
         }
-        return client;
+    }
+
+    private static long elapsedMillis(long startedNanos) {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startedNanos);
+    }
+
+    private HttpClient getHttpClient() {
+        return SlackConnectionPool.get().getClient(teamDomain);
+    }
+
+    private String getBaseUrl() {
+        return baseUrl != null ? baseUrl : "https://" + teamDomain + "." + host;
     }
 
     void setHost(String host) {
         this.host = host;
     }
+
+    void setBaseUrl(String baseUrl) {
+        this.baseUrl = baseUrl;
+    }
+
+    void setRateLimiter(SlackRateLimiter rateLimiter) {
+        this.rateLimiter = rateLimiter;
+    }
+
+    void setCircuitBreaker(SlackCircuitBreaker circuitBreaker) {
+        this.circuitBreaker = circuitBreaker;
+    }
+
+    void setMetrics(SlackMetrics metrics) {
+        this.metrics = metrics;
+    }
 }
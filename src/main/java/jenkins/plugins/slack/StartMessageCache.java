@@ -0,0 +1,79 @@
+package jenkins.plugins.slack;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Remembers where the start notice of each recent build was posted through the Web API, keyed by token, room and
+ * build, so that the build's completion notice can replace it. Start notices that are never replaced, e.g. because the
+ * build's completion was not posted, are dropped least recently used first once the cache is full.
+ */
+public class StartMessageCache {
+
+    static final int DEFAULT_CAPACITY = 1024;
+
+    private static StartMessageCache instance;
+
+    private final Map<String, Posted> messages;
+
+    public static synchronized StartMessageCache get() {
+        if (instance == null) {
+            instance = new StartMessageCache(DEFAULT_CAPACITY);
+        }
+        return instance;
+    }
+
+    StartMessageCache(final int capacity) {
+        messages = new LinkedHashMap<String, Posted>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Posted> eldest) {
+                return size() > capacity;
+            }
+        };
+    }
+
+    /**
+     * Where the build's start notice went in a room, or null if it is not known.
+     */
+    public synchronized Posted get(String token, String room, String build) {
+        return messages.get(key(token, room, build));
+    }
+
+    public synchronized void put(String token, String room, String build, Posted posted) {
+        messages.put(key(token, room, build), posted);
+    }
+
+    public synchronized void remove(String token, String room, String build) {
+        messages.remove(key(token, room, build));
+    }
+
+    synchronized int size() {
+        return messages.size();
+    }
+
+    private static String key(String token, String room, String build) {
+        return token + '\n' + room + '\n' + build;
+    }
+
+    /**
+     * A message as Slack identifies it: the id of its channel and its timestamp.
+     */
+    public static class Posted {
+
+        private final String channel;
+        private final String ts;
+
+        public Posted(String channel, String ts) {
+            this.channel = channel;
+            this.ts = ts;
+        }
+
+        public String getChannel() {
+            return channel;
+        }
+
+        public String getTs() {
+            return ts;
+        }
+    }
+}
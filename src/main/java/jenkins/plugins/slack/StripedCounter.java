@@ -0,0 +1,63 @@
+package jenkins.plugins.slack;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A counter that many threads can add to without contending: each thread adds to one of several cells, picked by
+ * thread ID, and reading the counter sums them. Cells are a cache line apart, so threads on different cells do not
+ * invalidate each other's caches.
+ */
+public class StripedCounter {
+
+    // 8 longs, one 64-byte cache line per cell
+    private static final int PADDING = 8;
+    private static final int DEFAULT_STRIPES = stripesFor(Runtime.getRuntime().availableProcessors());
+
+    private final AtomicLongArray cells;
+    private final int mask;
+
+    public StripedCounter() {
+        this(DEFAULT_STRIPES);
+    }
+
+    /**
+     * @param stripes number of cells, rounded up to a power of two
+     */
+    public StripedCounter(int stripes) {
+        int size = stripesFor(stripes);
+        this.cells = new AtomicLongArray(size * PADDING);
+        this.mask = size - 1;
+    }
+
+    static int stripesFor(int n) {
+        int stripes = 1;
+        while (stripes < n && stripes < 64) {
+            stripes <<= 1;
+        }
+        return stripes;
+    }
+
+    public void increment() {
+        add(1);
+    }
+
+    public void add(long delta) {
+        cells.addAndGet(((int) Thread.currentThread().getId() & mask) * PADDING, delta);
+    }
+
+    /**
+     * The total so far. Not a snapshot: adds that happen while summing may or may not be included.
+     */
+    public long sum() {
+        long sum = 0;
+        for (int i = 0; i < cells.length(); i += PADDING) {
+            sum += cells.get(i);
+        }
+        return sum;
+    }
+
+    @Override
+    public String toString() {
+        return Long.toString(sum());
+    }
+}
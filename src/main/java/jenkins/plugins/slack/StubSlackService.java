@@ -9,4 +9,8 @@ public class StubSlackService implements SlackService {
     public boolean publish(String message, String color) {
         return true;
     }
+
+    public PublishResult deliver(SlackMessage message) {
+        return PublishResult.empty();
+    }
 }
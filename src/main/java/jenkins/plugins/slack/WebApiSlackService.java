@@ -0,0 +1,243 @@
+package jenkins.plugins.slack;
+
+import org.apache.commons.httpclient.Header;
+import org.apache.commons.httpclient.HttpClient;
+import org.apache.commons.httpclient.HttpStatus;
+import org.apache.commons.httpclient.methods.PostMethod;
+import org.apache.commons.httpclient.methods.RequestEntity;
+import org.apache.commons.httpclient.methods.StringRequestEntity;
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import jenkins.plugins.slack.PublishResult.RoomResult;
+
+/**
+ * Posts through Slack's Web API with a bot token, instead of through the Jenkins CI incoming webhook. A build's start
+ * notice is posted with {@code chat.postMessage} and remembered by the timestamp Slack gives it; the build's completion
+ * notice then replaces it with {@code chat.update}, so that each build takes up one message in the channel, not two.
+ * <p>
+ * Rooms are posted to one after the other: the {@link SlackDispatcher} hands over one room at a time anyway.
+ */
+public class WebApiSlackService implements SlackService {
+
+    private static final Logger logger = Logger.getLogger(WebApiSlackService.class.getName());
+
+    static final String API_URL = "https://slack.com/api";
+
+    // chat.update errors meaning the start notice cannot be edited any more, so a new message is posted instead
+    private static final Set<String> UNEDITABLE = new HashSet<String>(Arrays.asList(
+            "message_not_found", "cant_update_message", "edit_window_closed", "channel_not_found"));
+
+    // errors Slack answers with a 200 that mean the token or bot cannot post at all, as a 401 or 403 would for the
+    // webhook; they count against the circuit breaker
+    private static final Set<String> AUTH_FAILURES = new HashSet<String>(Arrays.asList(
+            "invalid_auth", "not_authed", "token_revoked", "token_expired", "account_inactive", "not_in_channel"));
+
+    private String baseUrl = API_URL;
+    private String teamDomain;
+    private String token;
+    private String[] roomIds;
+    private SlackRateLimiter rateLimiter = SlackRateLimiter.get();
+    private SlackCircuitBreaker circuitBreaker = SlackCircuitBreaker.get();
+    private SlackMetrics metrics = SlackMetrics.get();
+    private StartMessageCache startMessages = StartMessageCache.get();
+
+    public WebApiSlackService(String teamDomain, String token, String roomId) {
+        super();
+        this.teamDomain = teamDomain;
+        this.token = token;
+        this.roomIds = roomId.split("[,; ]+");
+    }
+
+    /**
+     * Whether a token is a Web API token (bot or user, {@code xoxb-...} or {@code xoxp-...}) rather than a Jenkins CI
+     * integration token.
+     */
+    public static boolean isApiToken(String token) {
+        return token != null && token.startsWith("xox");
+    }
+
+    public boolean publish(String message) {
+        return publish(message, "warning");
+    }
+
+    /**
+     * Posts right away, waiting out a short throttle as {@link StandardSlackService#publish(String, String)} does.
+     */
+    public boolean publish(String message, String color) {
+        final SlackMessage slackMessage = SlackMessage.of(message, color);
+        return StandardSlackService.deliverWaiting(new StandardSlackService.RoomDelivery() {
+            public PublishResult deliver(String[] rooms) {
+                return WebApiSlackService.this.deliver(slackMessage, rooms);
+            }
+        }, roomIds).isSuccess();
+    }
+
+    public PublishResult deliver(SlackMessage message) {
+        return deliver(message, roomIds);
+    }
+
+    private PublishResult deliver(SlackMessage message, String[] roomIds) {
+        HttpClient client = SlackConnectionPool.get().getClient(teamDomain);
+        JSONArray attachments = toJSON(message);
+        List<RoomResult> results = new ArrayList<RoomResult>(roomIds.length);
+        for (String roomId : roomIds) {
+            RoomResult result = post(client, roomId, message, attachments);
+            if (!result.isThrottled()) {
+                metrics.recordResult(teamDomain, roomId, result.isSuccess());
+            }
+            results.add(result);
+        }
+        return new PublishResult(results);
+    }
+
+    private RoomResult post(HttpClient client, String roomId, SlackMessage message, JSONArray attachments) {
+        if (!circuitBreaker.allowRequest(teamDomain, token)) {
+            logger.fine("Slack circuit breaker for " + teamDomain + " is open, not posting to " + roomId);
+            return RoomResult.failed(roomId, new IOException("Circuit breaker for " + teamDomain + " is open"));
+        }
+        RoomResult result = send(client, roomId, message, attachments);
+        if (Thread.currentThread().isInterrupted() || result.isThrottled()) {
+            return result;
+        }
+        if (isApiFailure(result)) {
+            circuitBreaker.recordFailure(teamDomain, token);
+        } else if (result.getStatusCode() != StandardSlackService.SC_TOO_MANY_REQUESTS) {
+            circuitBreaker.recordSuccess(teamDomain, token);
+        }
+        return result;
+    }
+
+    private RoomResult send(HttpClient client, String roomId, SlackMessage message, JSONArray attachments) {
+        logger.info("Posting: to " + roomId + " on " + teamDomain + " using the Web API: " + message);
+        String build = message.getCompletionOf();
+        StartMessageCache.Posted start = build != null ? startMessages.get(token, roomId, build) : null;
+        if (start != null) {
+            RoomResult result = call(client, "chat.update", roomId, new JSONObject()
+                    .put("channel", start.getChannel())
+                    .put("ts", start.getTs())
+                    .put("attachments", attachments), null);
+            if (result.isSuccess() || !UNEDITABLE.contains(result.getError())) {
+                if (result.isSuccess()) {
+                    startMessages.remove(token, roomId, build);
+                }
+                return result;
+            }
+            // the start notice was deleted or can no longer be edited
+            startMessages.remove(token, roomId, build);
+        }
+        return call(client, "chat.postMessage", roomId, new JSONObject()
+                .put("channel", roomId)
+                .put("attachments", attachments), message.getStartOf());
+    }
+
+    /**
+     * Whether a result counts as a failure for the circuit breaker: anything the webhook would count, and the
+     * authentication errors the Web API reports in the body of a 200.
+     */
+    static boolean isApiFailure(RoomResult result) {
+        return SlackCircuitBreaker.isWebhookFailure(result.getStatusCode())
+                || (!result.isSuccess() && AUTH_FAILURES.contains(result.getError()));
+    }
+
+    /**
+     * Calls a Web API method. A call that has to wait for the rate limit, or that Slack throttles, is handed back
+     * as throttled rather than waited out.
+     *
+     * @param startOf the build whose start notice this posts, to remember where it went; null for anything else
+     */
+    private RoomResult call(HttpClient client, String method, String roomId, JSONObject request, String startOf) {
+        long wait = rateLimiter.reserve(teamDomain, token);
+        if (wait > 0) {
+            return RoomResult.throttled(roomId, "Rate limited", wait);
+        }
+        PostMethod post = new PostMethod(baseUrl + "/" + method);
+        long started = System.nanoTime();
+        try {
+            post.setRequestHeader("Authorization", "Bearer " + token);
+            RequestEntity entity = new StringRequestEntity(request.toString(), "application/json", "UTF-8");
+            post.setRequestEntity(entity);
+            int responseCode = client.executeMethod(post);
+            String response = post.getResponseBodyAsString();
+            metrics.recordPost(teamDomain, roomId, responseCode, elapsedMillis(started), entity.getContentLength());
+            if (responseCode == StandardSlackService.SC_TOO_MANY_REQUESTS) {
+                Header retryAfter = post.getResponseHeader("Retry-After");
+                long pause = rateLimiter.throttled(teamDomain, token,
+                        SlackRateLimiter.parseRetryAfter(retryAfter != null ? retryAfter.getValue() : null));
+                return RoomResult.throttled(roomId, response, pause);
+            }
+            if (responseCode != HttpStatus.SC_OK) {
+                logger.warning("Slack " + method + " to " + roomId + " may have failed. Response: " + response);
+                return RoomResult.rejected(roomId, responseCode, response);
+            }
+            // the Web API answers 200 to requests it refuses, and says why in the body
+            JSONObject answer = new JSONObject(response);
+            if (!answer.optBoolean("ok")) {
+                String error = answer.optString("error", "unknown_error");
+                logger.warning("Slack " + method + " to " + roomId + " failed: " + error);
+                return RoomResult.rejected(roomId, responseCode, error);
+            }
+            if (startOf != null) {
+                startMessages.put(token, roomId, startOf,
+                        new StartMessageCache.Posted(answer.optString("channel"), answer.optString("ts")));
+            }
+            return RoomResult.delivered(roomId, responseCode);
+        } catch (Exception e) {
+            logger.log(Level.SEVERE, "Error posting to Slack", e);
+            metrics.recordPost(teamDomain, roomId, SlackMetrics.NO_RESPONSE, elapsedMillis(started), 0);
+            return RoomResult.failed(roomId, e);
+        } finally {
+            post.releaseConnection();
+        }
+    }
+
+    /**
+     * The message's attachments, laid out as {@link SlackPayload} lays them out for the webhook.
+     */
+    static JSONArray toJSON(SlackMessage message) {
+        JSONArray attachments = new JSONArray();
+        for (SlackMessage.Attachment attachment : message.getAttachments()) {
+            JSONArray fields = new JSONArray();
+            fields.put(new JSONObject().put("short", false).put("value", attachment.getText()));
+            attachments.put(new JSONObject()
+                    .put("fallback", attachment.getText())
+                    .put("color", attachment.getColor())
+                    .put("fields", fields));
+        }
+        return attachments;
+    }
+
+    private static long elapsedMillis(long startedNanos) {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startedNanos);
+    }
+
+    void setBaseUrl(String baseUrl) {
+        this.baseUrl = baseUrl;
+    }
+
+    void setRateLimiter(SlackRateLimiter rateLimiter) {
+        this.rateLimiter = rateLimiter;
+    }
+
+    void setCircuitBreaker(SlackCircuitBreaker circuitBreaker) {
+        this.circuitBreaker = circuitBreaker;
+    }
+
+    void setMetrics(SlackMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    void setStartMessages(StartMessageCache startMessages) {
+        this.startMessages = startMessages;
+    }
+}
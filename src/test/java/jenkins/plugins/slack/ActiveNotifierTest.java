@@ -0,0 +1,186 @@
+package jenkins.plugins.slack;
+
+import hudson.model.Result;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+public class ActiveNotifierTest {
+
+    @Test
+    public void escapeReplacesSlackControlCharacters() {
+        assertEquals("a &amp;&amp; b &lt;c&gt; &amp;lt;", ActiveNotifier.MessageBuilder.escape("a && b <c> &lt;"));
+        assertEquals("&lt;", ActiveNotifier.MessageBuilder.escape("<"));
+        assertEquals("", ActiveNotifier.MessageBuilder.escape(""));
+    }
+
+    @Test
+    public void escapeReturnsPlainStringsAsIs() {
+        String plain = "my-job #42 passed";
+        assertSame(plain, ActiveNotifier.MessageBuilder.escape(plain));
+    }
+
+    @Test
+    public void appendEscapedWritesIntoTheBuffer() {
+        StringBuilder out = new StringBuilder("x ");
+        ActiveNotifier.MessageBuilder.appendEscaped(out, "1 < 2 > 0 & done");
+        assertEquals("x 1 &lt; 2 &gt; 0 &amp; done", out.toString());
+    }
+
+    @Test
+    public void startNoticeIsMarkedToBeReplacedByTheCompletion() {
+        SlackMessage message = ActiveNotifier.composeStarted("job - #3 Started", "good", "job#3", false);
+        assertEquals("job#3", message.getStartOf());
+        assertEquals("job - #3 Started", message.toString());
+    }
+
+    /**
+     * A digested or suppressed completion never replaces the start notice, which would then say "Starting..."
+     * for good.
+     */
+    @Test
+    public void startNoticeOfABatchedJobIsAPlainPost() {
+        SlackMessage message = ActiveNotifier.composeStarted("job - #3 Started", "good", "job#3", true);
+        assertNull(message.getStartOf());
+        assertEquals("job - #3 Started", message.toString());
+    }
+
+    @Test
+    public void completionWithCommitListIsOnePostWithTwoAttachments() {
+        SlackMessage message = ActiveNotifier.composeCompleted("job - #3 Failure after 2 min (<url|Open>)",
+                "Changes:\n- Fix build [alice]", Result.FAILURE);
+        List<SlackMessage.Attachment> attachments = message.getAttachments();
+        assertEquals(2, attachments.size());
+        assertEquals("job - #3 Failure after 2 min (<url|Open>)", attachments.get(0).getText());
+        assertEquals("danger", attachments.get(0).getColor());
+        assertEquals("Changes:\n- Fix build [alice]", attachments.get(1).getText());
+        assertEquals("danger", attachments.get(1).getColor());
+    }
+
+    @Test
+    public void completionWithoutCommitListIsTheStatusAlone() {
+        SlackMessage message = ActiveNotifier.composeCompleted("job - #4 Back to normal after 1 min (<url|Open>)",
+                null, Result.SUCCESS);
+        assertEquals(1, message.getAttachments().size());
+        assertEquals("job - #4 Back to normal after 1 min (<url|Open>)", message.getAttachments().get(0).getText());
+        assertEquals("good", message.getAttachments().get(0).getColor());
+    }
+
+    @Test
+    public void unstableCompletionIsAWarning() {
+        SlackMessage message = ActiveNotifier.composeCompleted("job - #5 Unstable", "No Changes.", Result.UNSTABLE);
+        assertEquals("warning", message.getAttachments().get(0).getColor());
+        assertEquals("warning", message.getAttachments().get(1).getColor());
+        assertEquals("job - #5 Unstable\nNo Changes.", message.toString());
+    }
+
+    @Test
+    public void buildWithChangesSummarisesItsOwn() {
+        CommitListCache cache = new CommitListCache(10);
+        Walk walk = new Walk(cache);
+        Build build = new Build("job", 1, "Changes:\n- own", new Build("upstream", 1, "Changes:\n- upstream", null));
+        assertEquals("Changes:\n- own", walk.walk(build));
+        assertEquals("[job#1]", walk.summarized.toString());
+    }
+
+    @Test
+    public void walksUpToTheNearestBuildWithChangesAndCachesEveryBuildOnTheWay() {
+        CommitListCache cache = new CommitListCache(10);
+        Build top = new Build("top", 7, "Changes:\n- top", null);
+        Build middle = new Build("middle", 3, null, top);
+        Build bottom = new Build("bottom", 5, null, middle);
+        assertEquals("Changes:\n- top", new Walk(cache).walk(bottom));
+        assertEquals("Changes:\n- top", cache.get("bottom", 5));
+        assertEquals("Changes:\n- top", cache.get("middle", 3));
+        assertEquals("Changes:\n- top", cache.get("top", 7));
+
+        // a sibling downstream build stops at the first cached build
+        Walk sibling = new Walk(cache);
+        assertEquals("Changes:\n- top", sibling.walk(new Build("sibling", 1, null, middle)));
+        assertEquals("[sibling#1]", sibling.summarized.toString());
+        assertEquals("Changes:\n- top", cache.get("sibling", 1));
+    }
+
+    @Test
+    public void stopsLookingAfterMaxUpstreamDepth() {
+        CommitListCache cache = new CommitListCache(100);
+        // changes just within reach are found
+        assertEquals("Changes:\n- far", new Walk(cache).walk(chain(ActiveNotifier.MAX_UPSTREAM_DEPTH)));
+        // one build further up they are not
+        cache = new CommitListCache(100);
+        Walk walk = new Walk(cache);
+        assertNull(walk.walk(chain(ActiveNotifier.MAX_UPSTREAM_DEPTH + 1)));
+        assertEquals(ActiveNotifier.MAX_UPSTREAM_DEPTH + 1, walk.summarized.size());
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void deletedUpstreamBuildEndsTheWalk() {
+        CommitListCache cache = new CommitListCache(10);
+        // getUpstream answers null when the upstream project or build has been deleted
+        Build orphan = new Build("downstream", 2, null, null);
+        assertNull(new Walk(cache).walk(orphan));
+        assertEquals(0, cache.size());
+    }
+
+    /**
+     * A chain of builds without changes, below one with changes that many builds up.
+     */
+    private static Build chain(int depth) {
+        Build build = new Build("job0", 1, "Changes:\n- far", null);
+        for (int i = 1; i <= depth; i++) {
+            build = new Build("job" + i, 1, null, build);
+        }
+        return build;
+    }
+
+    private static class Build {
+
+        private final String project;
+        private final int number;
+        private final String changes;
+        private final Build upstream;
+
+        Build(String project, int number, String changes, Build upstream) {
+            this.project = project;
+            this.number = number;
+            this.changes = changes;
+            this.upstream = upstream;
+        }
+    }
+
+    private static class Walk extends ActiveNotifier.UpstreamWalk<Build> {
+
+        private final List<String> summarized = new ArrayList<String>();
+
+        Walk(CommitListCache cache) {
+            super(cache);
+        }
+
+        @Override
+        String getProject(Build build) {
+            return build.project;
+        }
+
+        @Override
+        int getNumber(Build build) {
+            return build.number;
+        }
+
+        @Override
+        String summarize(Build build) {
+            summarized.add(build.project + "#" + build.number);
+            return build.changes;
+        }
+
+        @Override
+        Build getUpstream(Build build) {
+            return build.upstream;
+        }
+    }
+}
@@ -0,0 +1,60 @@
+package jenkins.plugins.slack;
+
+import hudson.model.Result;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+public class BuildOutcomeIndexTest {
+
+    @Test
+    public void unknownJobNeedsAWalk() {
+        BuildOutcomeIndex.JobOutcomes outcomes = new BuildOutcomeIndex.JobOutcomes();
+        assertNull(outcomes.find(5, true));
+    }
+
+    @Test
+    public void skipsAbortedBuilds() {
+        BuildOutcomeIndex.JobOutcomes outcomes = new BuildOutcomeIndex.JobOutcomes();
+        outcomes.seed(new int[]{3, 2, 1}, new Result[]{Result.ABORTED, Result.ABORTED, Result.FAILURE}, false);
+        assertSame(Result.FAILURE, outcomes.find(4, true).getValue());
+        assertSame(Result.ABORTED, outcomes.find(4, false).getValue());
+        // nothing is known below build 1
+        assertNull(outcomes.find(1, true));
+    }
+
+    @Test
+    public void firstBuildHasNoPrevious() {
+        BuildOutcomeIndex.JobOutcomes outcomes = new BuildOutcomeIndex.JobOutcomes();
+        outcomes.seed(new int[0], new Result[0], true);
+        assertSame(BuildOutcomeIndex.JobOutcomes.NONE, outcomes.find(1, true));
+        outcomes.record(1, Result.SUCCESS);
+        assertSame(Result.SUCCESS, outcomes.find(2, true).getValue());
+    }
+
+    @Test
+    public void buildsFinishingOutOfOrderSeeTheirOwnPredecessor() {
+        BuildOutcomeIndex.JobOutcomes outcomes = new BuildOutcomeIndex.JobOutcomes();
+        outcomes.seed(new int[]{10}, new Result[]{Result.SUCCESS}, false);
+        // #12 finishes before #11
+        outcomes.record(12, Result.FAILURE);
+        outcomes.record(11, Result.FAILURE);
+        assertSame(Result.SUCCESS, outcomes.find(11, true).getValue());
+        assertSame(Result.FAILURE, outcomes.find(12, true).getValue());
+        assertEquals(11, (int) outcomes.find(12, true).getKey());
+    }
+
+    @Test
+    public void windowIsBounded() {
+        BuildOutcomeIndex.JobOutcomes outcomes = new BuildOutcomeIndex.JobOutcomes();
+        outcomes.seed(new int[0], new Result[0], true);
+        for (int i = 1; i <= BuildOutcomeIndex.WINDOW + 10; i++) {
+            outcomes.record(i, Result.ABORTED);
+        }
+        // every kept build is aborted, so the index cannot answer and the caller walks
+        assertNull(outcomes.find(BuildOutcomeIndex.WINDOW + 11, true));
+        assertSame(Result.ABORTED, outcomes.find(BuildOutcomeIndex.WINDOW + 11, false).getValue());
+    }
+}
@@ -0,0 +1,61 @@
+package jenkins.plugins.slack;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class ChannelExecutorTest {
+
+    /**
+     * A task that throws must not leave its lane marked as running, which would stop the key for good.
+     */
+    @Test
+    public void laneCarriesOnAfterATaskThrows() throws Exception {
+        ScheduledThreadPoolExecutor timer = new ScheduledThreadPoolExecutor(1);
+        ChannelExecutor executor = new ChannelExecutor(1, 10, timer);
+        final List<String> ran = Collections.synchronizedList(new ArrayList<String>());
+        executor.execute("team|#room", new ChannelExecutor.Task() {
+            @Override
+            long run() {
+                ran.add("broken");
+                throw new IllegalStateException("broken");
+            }
+        });
+        executor.execute("team|#room", new Recording(ran, "queued behind it"));
+        long deadline = System.currentTimeMillis() + 5000;
+        while (ran.size() < 2 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5);
+        }
+        // the lane is finished with, so a later task starts it again
+        executor.execute("team|#room", new Recording(ran, "later"));
+        assertTrue(executor.shutdown(5, TimeUnit.SECONDS));
+        timer.shutdown();
+        assertEquals(Arrays.asList("broken", "queued behind it", "later"), ran);
+        assertEquals(0, executor.getQueued());
+    }
+
+    private static class Recording extends ChannelExecutor.Task {
+
+        private final List<String> ran;
+        private final String name;
+
+        Recording(List<String> ran, String name) {
+            this.ran = ran;
+            this.name = name;
+        }
+
+        @Override
+        long run() {
+            ran.add(name);
+            return -1;
+        }
+    }
+}
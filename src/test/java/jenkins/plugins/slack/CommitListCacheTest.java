@@ -0,0 +1,31 @@
+package jenkins.plugins.slack;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class CommitListCacheTest {
+
+    @Test
+    public void keysByProjectAndBuild() {
+        CommitListCache cache = new CommitListCache(10);
+        cache.put("folder/upstream", 7, "Changes:\n- fix [alice]");
+        assertEquals("Changes:\n- fix [alice]", cache.get("folder/upstream", 7));
+        assertNull(cache.get("folder/upstream", 8));
+        assertNull(cache.get("upstream", 7));
+    }
+
+    @Test
+    public void evictsLeastRecentlyUsed() {
+        CommitListCache cache = new CommitListCache(2);
+        cache.put("a", 1, "one");
+        cache.put("a", 2, "two");
+        cache.get("a", 1);
+        cache.put("a", 3, "three");
+        assertEquals(2, cache.size());
+        assertEquals("one", cache.get("a", 1));
+        assertNull(cache.get("a", 2));
+        assertEquals("three", cache.get("a", 3));
+    }
+}
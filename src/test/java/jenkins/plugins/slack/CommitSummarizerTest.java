@@ -0,0 +1,71 @@
+package jenkins.plugins.slack;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class CommitSummarizerTest {
+
+    @Test
+    public void keepsCommitOrderAndCollapsesDuplicates() {
+        CommitSummarizer commits = new CommitSummarizer();
+        commits.add("second", "bob", Arrays.asList("a"));
+        commits.add("first", "alice", Arrays.asList("a", "b"));
+        commits.add("second", "bob", Arrays.asList("c"));
+        assertEquals("Changes:\n- second [bob] (x2)\n- first [alice]", commits.summarize());
+        assertEquals(3, commits.getCommits());
+        assertEquals(2, commits.getAuthors());
+        assertEquals(3, commits.getFiles());
+    }
+
+    @Test
+    public void summarizesHugeChangeSetsFromTheStart() {
+        CommitSummarizer commits = new CommitSummarizer(100);
+        for (int i = 0; i < 5000; i++) {
+            commits.add("commit " + i, "dev" + (i % 37),
+                    Arrays.asList("src/A" + (i % 500), "src/B" + (i % 500), "pom.xml"));
+        }
+        String summary = commits.summarize();
+        assertTrue(summary.startsWith("Changes:\n- commit 0 [dev0]\n- commit 1 [dev1]\n"));
+        assertTrue(summary, summary.contains("\n- commit 99 [dev25]\n...and 4,900 more"
+                + " (5,000 commits by 37 authors, 1,001 files)"));
+        assertEquals(4900, commits.getOmitted());
+    }
+
+    @Test
+    public void shortensLongMessages() {
+        StringBuilder longLine = new StringBuilder();
+        for (int i = 0; i < 500; i++) {
+            longLine.append('x');
+        }
+        CommitSummarizer commits = new CommitSummarizer();
+        commits.add("subject\n\nbody that is not shown", "alice", Collections.<String>emptyList());
+        commits.add(longLine.toString(), "bob", Collections.<String>emptyList());
+        String[] lines = commits.summarize().split("\n");
+        assertEquals("- subject [alice]", lines[1]);
+        assertEquals(2 + CommitSummarizer.MAX_LINE_LENGTH + " [bob]".length(), lines[2].length());
+        assertTrue(lines[2].endsWith("... [bob]"));
+    }
+
+    /**
+     * Files touched by several commits are counted once, as the start notice counts them.
+     */
+    @Test
+    public void countsFilesAsTheStartNoticeDoes() {
+        CommitSummarizer commits = new CommitSummarizer(1);
+        DistinctPathCounter startNotice = new DistinctPathCounter();
+        for (int i = 0; i < 10000; i++) {
+            String path = "modules/File" + (i % 6000) + ".java";
+            commits.add("commit " + i, "dev", Arrays.asList(path));
+            startNotice.add(path);
+        }
+        assertEquals(startNotice.getCount(), commits.getFiles());
+        assertTrue(commits.summarize(), commits.summarize().endsWith(
+                " (10,000 commits by 1 author, " + startNotice.format() + " files)"));
+        assertTrue(startNotice.format().startsWith("about "));
+    }
+}
@@ -0,0 +1,66 @@
+package jenkins.plugins.slack;
+
+import hudson.util.VariableResolver;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+public class CustomMessageTemplateTest {
+
+    @Test
+    public void expandsBothVariableForms() {
+        CustomMessageTemplate template = CustomMessageTemplate.compile("Deployed $APP ${VERSION} to ${env.TARGET}");
+        assertEquals(Arrays.asList("APP", "VERSION", "env.TARGET"), new ArrayList<String>(template.getVariables()));
+        Map<String, String> values = new HashMap<String, String>();
+        values.put("APP", "web");
+        values.put("VERSION", "1.2");
+        values.put("env.TARGET", "prod");
+        assertEquals("Deployed web 1.2 to prod", template.render(resolver(values, null)));
+    }
+
+    @Test
+    public void unresolvedVariablesAndLoneDollarsAreKept() {
+        CustomMessageTemplate template = CustomMessageTemplate.compile("Cost: $5 $MISSING ${ALSO} ${ $} $");
+        assertEquals("Cost: $5 $MISSING ${ALSO} ${ $} $",
+                template.render(resolver(new HashMap<String, String>(), null)));
+    }
+
+    @Test
+    public void doubleDollarIsALiteralDollar() {
+        CustomMessageTemplate template = CustomMessageTemplate.compile("$$HOME costs $$5");
+        assertFalse(template.hasVariables());
+        assertEquals("$HOME costs $5", template.render(resolver(new HashMap<String, String>(), null)));
+    }
+
+    @Test
+    public void eachVariableIsLookedUpWhereItIsUsed() {
+        List<String> lookups = new ArrayList<String>();
+        CustomMessageTemplate.compile("$A-$B").render(resolver(new HashMap<String, String>(), lookups));
+        assertEquals(Arrays.asList("A", "B"), lookups);
+        CustomMessageTemplate.compile("no variables").render(resolver(new HashMap<String, String>(), lookups));
+        assertEquals(2, lookups.size());
+    }
+
+    @Test
+    public void emptyTemplate() {
+        assertEquals("", CustomMessageTemplate.compile(null).render(resolver(new HashMap<String, String>(), null)));
+    }
+
+    private static VariableResolver<String> resolver(final Map<String, String> values, final List<String> lookups) {
+        return new VariableResolver<String>() {
+            public String resolve(String name) {
+                if (lookups != null) {
+                    lookups.add(name);
+                }
+                return values.get(name);
+            }
+        };
+    }
+}
@@ -0,0 +1,49 @@
+package jenkins.plugins.slack;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class DistinctPathCounterTest {
+
+    @Test
+    public void countsDistinctPathsExactly() {
+        DistinctPathCounter counter = new DistinctPathCounter();
+        for (int i = 0; i < 3000; i++) {
+            counter.add("src/main/File" + (i % 1000) + ".java");
+        }
+        counter.add(null);
+        assertEquals(1000, counter.getCount());
+        assertTrue(counter.isExact());
+        assertEquals("1,000", counter.format());
+    }
+
+    @Test
+    public void estimatesLargeChangeSets() {
+        DistinctPathCounter counter = new DistinctPathCounter();
+        for (int i = 0; i < 50000; i++) {
+            counter.add("modules/m" + (i / 100) + "/File" + i + ".java");
+            counter.add("modules/m" + (i / 100) + "/File" + i + ".java");
+        }
+        assertFalse(counter.isExact());
+        assertFalse(counter.isCapped());
+        assertEquals(50000, counter.getCount(), 50000 * 0.08);
+        assertTrue(counter.format().startsWith("about "));
+    }
+
+    @Test
+    public void stopsLookingAfterTheCap() {
+        DistinctPathCounter counter = new DistinctPathCounter();
+        for (int i = 0; i < DistinctPathCounter.MAX_PATHS; i++) {
+            counter.add("f" + i);
+        }
+        assertFalse(counter.isCapped());
+        counter.add("one more");
+        assertTrue(counter.isCapped());
+        assertFalse(counter.isExact());
+        assertTrue(counter.format().startsWith("at least "));
+        assertEquals(DistinctPathCounter.MAX_PATHS, counter.getCount(), DistinctPathCounter.MAX_PATHS * 0.08);
+    }
+}
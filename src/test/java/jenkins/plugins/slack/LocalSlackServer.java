@@ -0,0 +1,256 @@
+package jenkins.plugins.slack;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import org.json.JSONObject;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Stands in for Slack's incoming webhook on a local port, for benchmarks and load tests that exercise the whole
+ * publish path without the network. It answers {@code ok}, after an optional delay, and can be told to fail or
+ * throttle a share of requests.
+ * <p>
+ * It also stands in for the Web API's {@code chat.postMessage} and {@code chat.update} under {@code /api/}, keeping
+ * the messages posted that way so that tests can look at what a channel would show.
+ */
+public class LocalSlackServer {
+
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final Random random = new Random();
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong bytesReceived = new AtomicLong();
+    private final AtomicLong errors = new AtomicLong();
+    private final AtomicLong throttled = new AtomicLong();
+    private volatile long latencyMillis;
+    private volatile double errorRate;
+    private volatile double throttleRate;
+    private volatile int errorStatus = 500;
+    private volatile String errorBody = "internal_error";
+    private volatile String apiToken;
+    // Web API messages by ts, in the order they were posted
+    private final Map<String, String> messages = new LinkedHashMap<String, String>();
+    private final AtomicLong updates = new AtomicLong();
+    private long nextTs = 1400000000;
+
+    /**
+     * @param threads how many requests are answered at once
+     */
+    public LocalSlackServer(int threads) throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        executor = Executors.newFixedThreadPool(threads);
+        server.setExecutor(executor);
+        server.createContext("/", new HttpHandler() {
+            public void handle(HttpExchange exchange) throws IOException {
+                answer(exchange);
+            }
+        });
+        server.start();
+    }
+
+    private void answer(HttpExchange exchange) throws IOException {
+        requests.incrementAndGet();
+        InputStream in = exchange.getRequestBody();
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        for (int n; (n = in.read(buffer)) != -1; ) {
+            body.write(buffer, 0, n);
+        }
+        in.close();
+        bytesReceived.addAndGet(body.size());
+        long delay = latencyMillis;
+        if (delay > 0) {
+            try {
+                Thread.sleep(delay);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        double roll;
+        synchronized (random) {
+            roll = random.nextDouble();
+        }
+        if (roll < throttleRate) {
+            throttled.incrementAndGet();
+            exchange.getResponseHeaders().set("Retry-After", "0");
+            respond(exchange, StandardSlackService.SC_TOO_MANY_REQUESTS, "rate_limited");
+        } else if (roll < throttleRate + errorRate) {
+            errors.incrementAndGet();
+            respond(exchange, errorStatus, errorBody);
+        } else if (exchange.getRequestURI().getPath().startsWith("/api/")) {
+            respond(exchange, 200, callApi(exchange, new String(body.toByteArray(), "UTF-8")).toString());
+        } else {
+            respond(exchange, 200, "ok");
+        }
+    }
+
+    private JSONObject callApi(HttpExchange exchange, String body) {
+        String expected = apiToken;
+        if (expected != null && !("Bearer " + expected).equals(exchange.getRequestHeaders().getFirst("Authorization"))) {
+            return error("invalid_auth");
+        }
+        JSONObject request = new JSONObject(body);
+        String text = request.getJSONArray("attachments").getJSONObject(0).optString("fallback");
+        String channel = request.getString("channel");
+        String method = exchange.getRequestURI().getPath().substring("/api/".length());
+        synchronized (messages) {
+            if (method.equals("chat.postMessage")) {
+                String ts = (nextTs++) + ".000100";
+                messages.put(ts, text);
+                return new JSONObject().put("ok", true).put("channel", "C" + Math.abs(channel.hashCode()))
+                        .put("ts", ts);
+            }
+            if (method.equals("chat.update")) {
+                String ts = request.getString("ts");
+                if (!messages.containsKey(ts)) {
+                    return error("message_not_found");
+                }
+                messages.put(ts, text);
+                updates.incrementAndGet();
+                return new JSONObject().put("ok", true).put("channel", channel).put("ts", ts);
+            }
+        }
+        return error("unknown_method");
+    }
+
+    private static JSONObject error(String error) {
+        return new JSONObject().put("ok", false).put("error", error);
+    }
+
+    private static void respond(HttpExchange exchange, int status, String body) throws IOException {
+        byte[] bytes = body.getBytes("UTF-8");
+        // -1 is how HttpServer is told there is no body; 0 would mean a chunked one
+        exchange.sendResponseHeaders(status, bytes.length > 0 ? bytes.length : -1);
+        OutputStream out = exchange.getResponseBody();
+        out.write(bytes);
+        out.close();
+    }
+
+    public String getBaseUrl() {
+        return "http://127.0.0.1:" + server.getAddress().getPort();
+    }
+
+    /**
+     * A service posting to this server, with its own rate limiter and circuit breaker so that nothing is shared
+     * with other tests. The rate limiter lets everything through.
+     */
+    public StandardSlackService createService(String teamDomain, String token, String rooms) {
+        StandardSlackService service = new StandardSlackService(teamDomain, token, rooms);
+        service.setBaseUrl(getBaseUrl());
+        service.setRateLimiter(new SlackRateLimiter(Integer.MAX_VALUE, Integer.MAX_VALUE));
+        service.setCircuitBreaker(new SlackCircuitBreaker(SlackCircuitBreaker.DEFAULT_FAILURE_THRESHOLD,
+                SlackCircuitBreaker.DEFAULT_PROBE_INTERVAL_SECONDS));
+        return service;
+    }
+
+    /**
+     * A Web API service posting to this server, with its own rate limiter, circuit breaker and start messages.
+     */
+    public WebApiSlackService createWebApiService(String teamDomain, String token, String rooms) {
+        WebApiSlackService service = new WebApiSlackService(teamDomain, token, rooms);
+        service.setBaseUrl(getBaseUrl() + "/api");
+        service.setRateLimiter(new SlackRateLimiter(Integer.MAX_VALUE, Integer.MAX_VALUE));
+        service.setCircuitBreaker(new SlackCircuitBreaker(SlackCircuitBreaker.DEFAULT_FAILURE_THRESHOLD,
+                SlackCircuitBreaker.DEFAULT_PROBE_INTERVAL_SECONDS));
+        service.setStartMessages(new StartMessageCache(StartMessageCache.DEFAULT_CAPACITY));
+        return service;
+    }
+
+    /**
+     * @param apiToken the only token the Web API accepts; null accepts any
+     */
+    public void setApiToken(String apiToken) {
+        this.apiToken = apiToken;
+    }
+
+    /**
+     * The text of every message the Web API holds, oldest first, as edited.
+     */
+    public List<String> getMessages() {
+        synchronized (messages) {
+            return new ArrayList<String>(messages.values());
+        }
+    }
+
+    /**
+     * Deletes every Web API message, as someone cleaning up the channel would.
+     */
+    public void deleteMessages() {
+        synchronized (messages) {
+            messages.clear();
+        }
+    }
+
+    public long getUpdates() {
+        return updates.get();
+    }
+
+    public void setLatencyMillis(long latencyMillis) {
+        this.latencyMillis = latencyMillis;
+    }
+
+    /**
+     * @param errorRate share of requests answered with a 500
+     */
+    public void setErrorRate(double errorRate) {
+        this.errorRate = errorRate;
+    }
+
+    /**
+     * Sets how failed requests are answered, by default a 500 saying {@code internal_error}. An empty body is sent
+     * without any content.
+     */
+    public void setErrorResponse(int status, String body) {
+        this.errorStatus = status;
+        this.errorBody = body;
+    }
+
+    /**
+     * @param throttleRate share of requests answered with a 429 and {@code Retry-After: 0}
+     */
+    public void setThrottleRate(double throttleRate) {
+        this.throttleRate = throttleRate;
+    }
+
+    public long getRequests() {
+        return requests.get();
+    }
+
+    public long getBytesReceived() {
+        return bytesReceived.get();
+    }
+
+    public long getErrors() {
+        return errors.get();
+    }
+
+    public long getThrottled() {
+        return throttled.get();
+    }
+
+    public void stop() {
+        server.stop(0);
+        executor.shutdownNow();
+        try {
+            executor.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
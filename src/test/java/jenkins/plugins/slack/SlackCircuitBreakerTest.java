@@ -0,0 +1,77 @@
+package jenkins.plugins.slack;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class SlackCircuitBreakerTest {
+
+    @Test
+    public void opensAfterThresholdAndFailsFast() {
+        SlackCircuitBreaker.Breaker breaker = new SlackCircuitBreaker.Breaker("team", "token");
+        long now = 1000;
+        breaker.failure(now, 3);
+        breaker.failure(now, 3);
+        assertTrue(breaker.allow(now, 60000));
+        breaker.failure(now, 3);
+        assertEquals(SlackCircuitBreaker.State.OPEN, breaker.getState());
+        assertFalse(breaker.allow(now + 59999, 60000));
+        assertEquals(1, breaker.status().getTrips());
+    }
+
+    @Test
+    public void successResetsFailureCount() {
+        SlackCircuitBreaker.Breaker breaker = new SlackCircuitBreaker.Breaker("team", "token");
+        breaker.failure(0, 2);
+        breaker.success(0);
+        breaker.failure(0, 2);
+        assertEquals(SlackCircuitBreaker.State.CLOSED, breaker.getState());
+    }
+
+    @Test
+    public void halfOpenLetsOneProbeThrough() {
+        SlackCircuitBreaker.Breaker breaker = new SlackCircuitBreaker.Breaker("team", "token");
+        breaker.failure(0, 1);
+        assertTrue(breaker.allow(60000, 60000));
+        assertEquals(SlackCircuitBreaker.State.HALF_OPEN, breaker.getState());
+        assertFalse(breaker.allow(60001, 60000));
+        breaker.success(60002);
+        assertEquals(SlackCircuitBreaker.State.CLOSED, breaker.getState());
+        assertTrue(breaker.allow(60003, 60000));
+    }
+
+    @Test
+    public void failedProbeReopens() {
+        SlackCircuitBreaker.Breaker breaker = new SlackCircuitBreaker.Breaker("team", "token");
+        breaker.failure(0, 1);
+        assertTrue(breaker.allow(60000, 60000));
+        breaker.failure(60001, 1);
+        assertEquals(SlackCircuitBreaker.State.OPEN, breaker.getState());
+        assertFalse(breaker.allow(100000, 60000));
+        assertTrue(breaker.allow(120001, 60000));
+    }
+
+    @Test
+    public void onlyWebhookLevelErrorsCount() {
+        assertTrue(SlackCircuitBreaker.isWebhookFailure(-1));
+        assertTrue(SlackCircuitBreaker.isWebhookFailure(503));
+        assertTrue(SlackCircuitBreaker.isWebhookFailure(403));
+        assertFalse(SlackCircuitBreaker.isWebhookFailure(200));
+        assertFalse(SlackCircuitBreaker.isWebhookFailure(404));
+    }
+
+    @Test
+    public void openCircuitFailsPublishWithoutPosting() {
+        SlackCircuitBreaker circuitBreaker = new SlackCircuitBreaker(1, 60);
+        circuitBreaker.recordFailure("team", "token");
+        StandardSlackService service = new StandardSlackService("team", "token", "#room");
+        service.setHost("invalid.localdomain");
+        service.setCircuitBreaker(circuitBreaker);
+        PublishResult result = service.deliver(SlackMessage.of("message", "good"));
+        assertFalse(result.isSuccess());
+        assertEquals(-1, result.getFailures().get(0).getStatusCode());
+        assertTrue(SlackDispatcher.isRetryable(result.getFailures().get(0)));
+    }
+}
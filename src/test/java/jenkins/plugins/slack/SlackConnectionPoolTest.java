@@ -0,0 +1,29 @@
+package jenkins.plugins.slack;
+
+import org.apache.commons.httpclient.HttpClient;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+public class SlackConnectionPoolTest {
+
+    @Test
+    public void clientsAreSharedPerTeam() {
+        SlackConnectionPool pool = new SlackConnectionPool();
+        HttpClient first = pool.getClient("team-a");
+        assertSame(first, pool.getClient("team-a"));
+        assertNotSame(first, pool.getClient("team-b"));
+        assertEquals(2, pool.size());
+    }
+
+    @Test
+    public void resetRebuildsClients() {
+        SlackConnectionPool pool = new SlackConnectionPool();
+        HttpClient first = pool.getClient("team-a");
+        pool.reset();
+        assertEquals(0, pool.size());
+        assertNotSame(first, pool.getClient("team-a"));
+    }
+}
@@ -0,0 +1,93 @@
+package jenkins.plugins.slack;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+public class SlackDigestTest {
+
+    private static final SlackRoute ROUTE = new SlackRoute("team", "token", "#builds");
+
+    @Test
+    public void flushesOnceMaxEventsIsReached() {
+        RecordingDispatcher dispatcher = new RecordingDispatcher();
+        SlackDigest digest = new SlackDigest(dispatcher);
+        digest.add(ROUTE, 3600, 3, "a #1");
+        digest.add(ROUTE, 3600, 3, "b #1");
+        assertEquals(0, dispatcher.messages.size());
+        digest.add(ROUTE, 3600, 3, "c #1");
+        assertEquals(1, dispatcher.messages.size());
+        assertEquals("Digest: 3 builds succeeded: a #1, b #1, c #1", dispatcher.messages.get(0).toString());
+        assertEquals(0, digest.getOpenDigests());
+    }
+
+    @Test
+    public void summaryCountsFailuresPostedMeanwhile() {
+        RecordingDispatcher dispatcher = new RecordingDispatcher();
+        SlackDigest digest = new SlackDigest(dispatcher);
+        digest.add(ROUTE, 3600, 50, "a #1");
+        digest.recordFailure(ROUTE, 3600, "b #7");
+        digest.add(ROUTE, 3600, 50, "a #2");
+        digest.flushAll();
+        assertEquals(1, dispatcher.messages.size());
+        SlackMessage.Attachment summary = dispatcher.messages.get(0).getAttachments().get(0);
+        assertEquals("Digest: 2 builds succeeded, 1 failed: b #7", summary.getText());
+        assertEquals("danger", summary.getColor());
+    }
+
+    @Test
+    public void failuresWithoutOpenDigestAreNotBuffered() {
+        RecordingDispatcher dispatcher = new RecordingDispatcher();
+        SlackDigest digest = new SlackDigest(dispatcher);
+        digest.recordFailure(ROUTE, 3600, "b #7");
+        digest.flushAll();
+        assertEquals(0, dispatcher.messages.size());
+    }
+
+    @Test
+    public void jobsWithDifferentWindowsKeepTheirOwnDigests() throws Exception {
+        RecordingDispatcher dispatcher = new RecordingDispatcher();
+        SlackDigest digest = new SlackDigest(dispatcher);
+        digest.add(ROUTE, 3600, 50, "hourly #1");
+        digest.add(ROUTE, 1, 50, "quick #1");
+        digest.recordFailure(ROUTE, 1, "quick #2");
+        assertEquals(2, digest.getOpenDigests());
+        for (int i = 0; i < 50 && dispatcher.messages.isEmpty(); i++) {
+            Thread.sleep(100);
+        }
+        // the short window closes on time, without waiting for the hour-long one opened before it
+        assertEquals(1, dispatcher.messages.size());
+        assertEquals("Digest: 1 build succeeded, 1 failed: quick #2", dispatcher.messages.get(0).toString());
+        assertEquals(1, digest.getOpenDigests());
+    }
+
+    @Test
+    public void windowClosesOnItsOwn() throws Exception {
+        RecordingDispatcher dispatcher = new RecordingDispatcher();
+        SlackDigest digest = new SlackDigest(dispatcher);
+        digest.add(ROUTE, 1, 50, "a #1");
+        for (int i = 0; i < 50 && dispatcher.messages.isEmpty(); i++) {
+            Thread.sleep(100);
+        }
+        assertEquals(1, dispatcher.messages.size());
+    }
+
+    private static class RecordingDispatcher extends SlackDispatcher {
+
+        private final List<SlackMessage> messages = Collections.synchronizedList(new ArrayList<SlackMessage>());
+
+        RecordingDispatcher() {
+            super(new SlackOutbox(null), 1, 1);
+        }
+
+        @Override
+        public boolean dispatch(SlackRoute route, SlackMessage message) {
+            messages.add(message);
+            return true;
+        }
+    }
+}
@@ -0,0 +1,389 @@
+package jenkins.plugins.slack;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class SlackDispatcherTest {
+
+    private static final SlackRoute ROUTE = new SlackRoute("team", "token", "#builds");
+
+    /**
+     * A slow Slack must not hold up the caller.
+     */
+    @Test
+    public void dispatchDoesNotWaitForDelivery() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        SlackDispatcher dispatcher = new StubDispatcher(new BlockingSlackService(release, new AtomicInteger()), 1, 10);
+        long start = System.nanoTime();
+        assertTrue(dispatcher.dispatch(ROUTE, SlackMessage.of("message", "good")));
+        assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < 1000);
+        release.countDown();
+        assertTrue(dispatcher.shutdown(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void fullQueueDefersInsteadOfBlocking() {
+        CountDownLatch release = new CountDownLatch(1);
+        BlockingSlackService slack = new BlockingSlackService(release, new AtomicInteger());
+        SlackDispatcher dispatcher = new StubDispatcher(slack, 1, 1);
+        // one message in flight and one queued; anything after that is deferred
+        dispatcher.dispatch(ROUTE, SlackMessage.of("first", "good"));
+        dispatcher.dispatch(ROUTE, SlackMessage.of("second", "good"));
+        boolean accepted = true;
+        for (int i = 0; i < 5 && accepted; i++) {
+            accepted = dispatcher.dispatch(ROUTE, SlackMessage.of("overflow", "good"));
+        }
+        assertFalse(accepted);
+        assertTrue(dispatcher.getPendingRetries() > 0);
+        release.countDown();
+        dispatcher.shutdown(5, TimeUnit.SECONDS);
+    }
+
+    @Test
+    public void deferredMessageBacksOffEachTimeTheQueueIsFull() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        final List<Integer> attempts = Collections.synchronizedList(new ArrayList<Integer>());
+        SlackDispatcher dispatcher = new StubDispatcher(new BlockingSlackService(release, new AtomicInteger()), 1, 1) {
+            @Override
+            long retryDelayMillis(int attempt) {
+                attempts.add(attempt);
+                return 20;
+            }
+        };
+        dispatcher.dispatch(ROUTE, SlackMessage.of("first", "good"));
+        awaitPickedUp(dispatcher);
+        dispatcher.dispatch(ROUTE, SlackMessage.of("second", "good"));
+        dispatcher.dispatch(ROUTE, SlackMessage.of("overflow", "good"));
+        long deadline = System.currentTimeMillis() + 5000;
+        while (attempts.size() < 3 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        release.countDown();
+        assertTrue(dispatcher.shutdown(5, TimeUnit.SECONDS));
+        assertEquals(Arrays.asList(0, 1, 2), new ArrayList<Integer>(attempts).subList(0, 3));
+    }
+
+    @Test
+    public void deferredMessageIsGivenUpOnOnceTooOld() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        SlackDispatcher dispatcher = new StubDispatcher(new BlockingSlackService(release, new AtomicInteger()), 1, 1);
+        dispatcher.dispatch(ROUTE, SlackMessage.of("first", "good"));
+        awaitPickedUp(dispatcher);
+        dispatcher.dispatch(ROUTE, SlackMessage.of("second", "good"));
+        dispatcher.getOutbox().add(new SlackOutbox.Entry("stale", System.currentTimeMillis()
+                - SlackDispatcher.MAX_AGE_MILLIS - 1000, ROUTE, SlackMessage.of("stale", "good")));
+        int pending = dispatcher.getPendingRetries();
+        dispatcher.replay();
+        assertEquals(pending, dispatcher.getPendingRetries());
+        assertEquals(2, dispatcher.getOutbox().size());
+        release.countDown();
+        assertTrue(dispatcher.shutdown(5, TimeUnit.SECONDS));
+    }
+
+    /**
+     * Once the queue has room again, a message dispatched after one that was deferred must not overtake it.
+     */
+    @Test
+    public void deferredMessageIsNotOvertakenByLaterOnes() throws Exception {
+        final CountDownLatch release = new CountDownLatch(1);
+        final List<String> delivered = Collections.synchronizedList(new ArrayList<String>());
+        SlackDispatcher dispatcher = new SlackDispatcher(new SlackOutbox(null), 1, 1) {
+            @Override
+            SlackService createService(final SlackRoute route) {
+                return new SlackNotifierTest.SlackServiceStub() {
+                    @Override
+                    public PublishResult deliver(SlackMessage message) {
+                        try {
+                            release.await();
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                        }
+                        delivered.add(message.toString());
+                        return result(PublishResult.RoomResult.delivered(route.getRoom(), 200));
+                    }
+                };
+            }
+
+            @Override
+            long retryDelayMillis(int attempt) {
+                return 300;
+            }
+        };
+        dispatcher.dispatch(ROUTE, SlackMessage.of("first", "good"));
+        awaitPickedUp(dispatcher);
+        assertTrue(dispatcher.dispatch(ROUTE, SlackMessage.of("second", "good")));
+        assertFalse(dispatcher.dispatch(ROUTE, SlackMessage.of("third", "good")));
+        // the queue drains long before the deferred message is tried again
+        release.countDown();
+        long deadline = System.currentTimeMillis() + 5000;
+        while (delivered.size() < 2 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5);
+        }
+        assertEquals(Arrays.asList("first", "second"), delivered);
+        assertFalse(dispatcher.dispatch(ROUTE, SlackMessage.of("fourth", "good")));
+        // another room has room to spare
+        assertTrue(dispatcher.dispatch(new SlackRoute("team", "token", "#other"), SlackMessage.of("other", "good")));
+        while (delivered.size() < 5 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5);
+        }
+        assertTrue(dispatcher.shutdown(5, TimeUnit.SECONDS));
+        delivered.remove("other");
+        assertEquals(Arrays.asList("first", "second", "third", "fourth"), delivered);
+        assertEquals(0, dispatcher.getOutbox().size());
+    }
+
+    @Test
+    public void shutdownDrainsQueuedMessages() {
+        AtomicInteger delivered = new AtomicInteger();
+        SlackDispatcher dispatcher = new StubDispatcher(new BlockingSlackService(new CountDownLatch(0), delivered), 2, 100);
+        for (int i = 0; i < 50; i++) {
+            dispatcher.dispatch(ROUTE, SlackMessage.of("message " + i, "good"));
+        }
+        assertTrue(dispatcher.shutdown(5, TimeUnit.SECONDS));
+        assertEquals(50, delivered.get());
+        assertEquals(0, dispatcher.getOutbox().size());
+    }
+
+    @Test
+    public void onlyRetryableRoomsAreKeptForRetry() {
+        SlackDispatcher dispatcher = new SlackDispatcher(new SlackOutbox(null), 1, 10) {
+            @Override
+            SlackService createService(final SlackRoute route) {
+                return new SlackNotifierTest.SlackServiceStub() {
+                    @Override
+                    public PublishResult deliver(SlackMessage message) {
+                        String room = route.getRoom();
+                        if (room.equals("#ok")) {
+                            return result(PublishResult.RoomResult.delivered(room, 200));
+                        } else if (room.equals("#down")) {
+                            return result(PublishResult.RoomResult.rejected(room, 503, "unavailable"));
+                        }
+                        return result(PublishResult.RoomResult.rejected(room, 404, "channel_not_found"));
+                    }
+                };
+            }
+        };
+        dispatcher.dispatch(new SlackRoute("team", "token", "#ok,#down,#gone"), SlackMessage.of("message", "good"));
+        dispatcher.shutdown(5, TimeUnit.SECONDS);
+        assertEquals(1, dispatcher.getOutbox().size());
+        assertEquals("#down", dispatcher.getOutbox().getPending().get(0).getRoute().getRoom());
+    }
+
+    /**
+     * However a room list is written, each room gets one entry under its plain name, so that every notification to
+     * a room goes through the same lane.
+     */
+    @Test
+    public void roomsAreDispatchedUnderTheirPlainNames() {
+        final List<String> rooms = Collections.synchronizedList(new ArrayList<String>());
+        SlackDispatcher dispatcher = new SlackDispatcher(new SlackOutbox(null), 1, 10) {
+            @Override
+            SlackService createService(final SlackRoute route) {
+                return new SlackNotifierTest.SlackServiceStub() {
+                    @Override
+                    public PublishResult deliver(SlackMessage message) {
+                        rooms.add(route.getRoom());
+                        return result(PublishResult.RoomResult.delivered(route.getRoom(), 200));
+                    }
+                };
+            }
+        };
+        dispatcher.dispatch(new SlackRoute("team", "token", "#ops,"), SlackMessage.of("started", "good"));
+        dispatcher.dispatch(new SlackRoute("team", "token", ", #ops ;@someone"), SlackMessage.of("done", "good"));
+        dispatcher.dispatch(new SlackRoute("team", "token", ""), SlackMessage.of("default", "good"));
+        assertTrue(dispatcher.shutdown(5, TimeUnit.SECONDS));
+        assertEquals(Arrays.asList("#ops", "#ops", "@someone", ""), rooms);
+    }
+
+    @Test
+    public void retryableStatusCodes() {
+        assertTrue(SlackDispatcher.isRetryable(PublishResult.RoomResult.failed("#a", new java.io.IOException())));
+        assertTrue(SlackDispatcher.isRetryable(PublishResult.RoomResult.rejected("#a", 429, "")));
+        assertTrue(SlackDispatcher.isRetryable(PublishResult.RoomResult.rejected("#a", 502, "")));
+        assertFalse(SlackDispatcher.isRetryable(PublishResult.RoomResult.rejected("#a", 404, "")));
+        assertEquals(SlackDispatcher.MAX_RETRY_DELAY_MILLIS, SlackDispatcher.getRetryDelayMillis(100));
+    }
+
+    @Test
+    public void messagesToOneRoomKeepTheirOrder() throws Exception {
+        final List<String> delivered = Collections.synchronizedList(new ArrayList<String>());
+        SlackDispatcher dispatcher = new SlackDispatcher(new SlackOutbox(null), 4, 1000) {
+            @Override
+            SlackService createService(final SlackRoute route) {
+                return new SlackNotifierTest.SlackServiceStub() {
+                    @Override
+                    public PublishResult deliver(SlackMessage message) {
+                        if (message.toString().hashCode() % 3 == 0) {
+                            Thread.yield();
+                        }
+                        delivered.add(route.getRoom() + " " + message.getAttachments().get(0).getText());
+                        return result(PublishResult.RoomResult.delivered(route.getRoom(), 200));
+                    }
+                };
+            }
+        };
+        for (int i = 0; i < 100; i++) {
+            dispatcher.dispatch(new SlackRoute("team", "token", "#a,#b" + (i % 2 == 0 ? ",#c" : "")),
+                    SlackMessage.of(String.valueOf(i), "good"));
+        }
+        assertTrue(dispatcher.shutdown(5, TimeUnit.SECONDS));
+        assertEquals(250, delivered.size());
+        Map<String, Integer> last = new HashMap<String, Integer>();
+        for (String delivery : delivered) {
+            String[] parts = delivery.split(" ");
+            Integer previous = last.put(parts[0], Integer.valueOf(parts[1]));
+            assertTrue(delivered.toString(), previous == null || previous < Integer.valueOf(parts[1]));
+        }
+    }
+
+    @Test
+    public void retryHoldsBackLaterMessagesToTheSameRoom() throws Exception {
+        final List<String> delivered = Collections.synchronizedList(new ArrayList<String>());
+        final AtomicInteger flakyAttempts = new AtomicInteger();
+        SlackDispatcher dispatcher = new SlackDispatcher(new SlackOutbox(null), 2, 10) {
+            @Override
+            SlackService createService(final SlackRoute route) {
+                return new SlackNotifierTest.SlackServiceStub() {
+                    @Override
+                    public PublishResult deliver(SlackMessage message) {
+                        String text = message.getAttachments().get(0).getText();
+                        if (route.getRoom().equals("#flaky") && flakyAttempts.getAndIncrement() == 0) {
+                            delivered.add(text + " failed");
+                            return result(PublishResult.RoomResult.rejected(route.getRoom(), 503, "unavailable"));
+                        }
+                        delivered.add(text);
+                        return result(PublishResult.RoomResult.delivered(route.getRoom(), 200));
+                    }
+                };
+            }
+
+            @Override
+            long retryDelayMillis(int attempt) {
+                return 200;
+            }
+        };
+        dispatcher.dispatch(new SlackRoute("team", "token", "#flaky"), SlackMessage.of("started", "good"));
+        dispatcher.dispatch(new SlackRoute("team", "token", "#flaky"), SlackMessage.of("failed", "danger"));
+        dispatcher.dispatch(new SlackRoute("team", "token", "#other"), SlackMessage.of("other", "good"));
+        long deadline = System.currentTimeMillis() + 5000;
+        while (delivered.size() < 4 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertTrue(dispatcher.shutdown(5, TimeUnit.SECONDS));
+        assertEquals(4, delivered.size());
+        // the other room is not held up by the retry
+        assertTrue(delivered.indexOf("other") < delivered.indexOf("started"));
+        delivered.remove("other");
+        assertEquals(Arrays.asList("started failed", "started", "failed"), delivered);
+        assertEquals(0, dispatcher.getOutbox().size());
+    }
+
+    /**
+     * A throttled webhook waits in its lanes; the worker threads go on posting to other teams meanwhile.
+     */
+    @Test
+    public void throttledTeamDoesNotHoldUpOthers() throws Exception {
+        final List<String> delivered = Collections.synchronizedList(new ArrayList<String>());
+        final AtomicInteger throttled = new AtomicInteger();
+        SlackDispatcher dispatcher = new SlackDispatcher(new SlackOutbox(null), 1, 10) {
+            @Override
+            SlackService createService(final SlackRoute route) {
+                return new SlackNotifierTest.SlackServiceStub() {
+                    @Override
+                    public PublishResult deliver(SlackMessage message) {
+                        if (route.getTeamDomain().equals("throttled")) {
+                            throttled.incrementAndGet();
+                            return result(PublishResult.RoomResult.throttled(route.getRoom(), null, 60000));
+                        }
+                        delivered.add(message.toString());
+                        return result(PublishResult.RoomResult.delivered(route.getRoom(), 200));
+                    }
+                };
+            }
+        };
+        dispatcher.dispatch(new SlackRoute("throttled", "token", "#a,#b"), SlackMessage.of("held", "good"));
+        dispatcher.dispatch(new SlackRoute("team", "token", "#c"), SlackMessage.of("first", "good"));
+        dispatcher.dispatch(new SlackRoute("team", "token", "#c"), SlackMessage.of("second", "good"));
+        long deadline = System.currentTimeMillis() + 2000;
+        while (delivered.size() < 2 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(Arrays.asList("first", "second"), delivered);
+        assertEquals(2, throttled.get());
+        assertEquals(2, dispatcher.getWaitingChannels());
+        // being held back is not a failure: the entries stay as they are, to be posted later
+        assertEquals(2, dispatcher.getOutbox().size());
+        dispatcher.shutdown(5, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Waits for the worker to take what is queued, so that the queue's one place is free again.
+     */
+    private static void awaitPickedUp(SlackDispatcher dispatcher) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (dispatcher.getQueueDepth() > 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(1);
+        }
+    }
+
+    static PublishResult result(PublishResult.RoomResult room) {
+        return new PublishResult(Collections.singletonList(room));
+    }
+
+    private static class StubDispatcher extends SlackDispatcher {
+
+        private final SlackService slack;
+
+        StubDispatcher(SlackService slack, int threads, int queueSize) {
+            super(new SlackOutbox(null), threads, queueSize);
+            this.slack = slack;
+        }
+
+        @Override
+        SlackService createService(SlackRoute route) {
+            return slack;
+        }
+    }
+
+    private static class BlockingSlackService implements SlackService {
+
+        private final CountDownLatch release;
+        private final AtomicInteger delivered;
+
+        BlockingSlackService(CountDownLatch release, AtomicInteger delivered) {
+            this.release = release;
+            this.delivered = delivered;
+        }
+
+        public boolean publish(String message) {
+            return publish(message, "warning");
+        }
+
+        public boolean publish(String message, String color) {
+            return deliver(SlackMessage.of(message, color)).isSuccess();
+        }
+
+        public PublishResult deliver(SlackMessage message) {
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            delivered.incrementAndGet();
+            return new PublishResult(Collections.singletonList(PublishResult.RoomResult.delivered("#builds", 200)));
+        }
+    }
+}
@@ -0,0 +1,232 @@
+package jenkins.plugins.slack;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Simulates a build storm offline: producer threads finish thousands of builds at once, each composing a
+ * completion message the way {@link ActiveNotifier} does and handing it to a {@link SlackDispatcher}, which posts
+ * through {@link StandardSlackService} to a {@link LocalSlackServer}. Reports throughput, delivery latency from
+ * dispatch to a room's 200, and peak threads and heap.
+ * <p>
+ * Run with {@code mvn -Pload test}; settings are system properties, e.g.
+ * {@code -Dload.builds=20000 -Dload.latencyMillis=200 -Dload.errorRate=0.05 -Dload.throttleRate=0.02}.
+ */
+public class SlackLoadHarness {
+
+    private final int builds = Integer.getInteger("load.builds", 5000);
+    private final int producers = Integer.getInteger("load.producers", 8);
+    private final int rooms = Integer.getInteger("load.rooms", 1);
+    private final int dispatcherThreads =
+            Integer.getInteger("load.dispatcherThreads", SlackDispatcher.DEFAULT_THREADS);
+    private final int queueSize = Integer.getInteger("load.queueSize", SlackDispatcher.DEFAULT_QUEUE_SIZE);
+    private final int serverThreads = Integer.getInteger("load.serverThreads", 16);
+    private final long latencyMillis = Long.getLong("load.latencyMillis", 50);
+    private final double errorRate = Double.parseDouble(System.getProperty("load.errorRate", "0.01"));
+    private final double throttleRate = Double.parseDouble(System.getProperty("load.throttleRate", "0.01"));
+    private final long timeoutSeconds = Long.getLong("load.timeoutSeconds", 600);
+
+    // when each message was dispatched, and how long each room took to get it
+    private final ConcurrentMap<SlackMessage, Long> dispatchedAt = new ConcurrentHashMap<SlackMessage, Long>();
+    private final List<Long> latencies = new ArrayList<Long>();
+    private final AtomicInteger deferred = new AtomicInteger();
+    private volatile int peakThreads;
+    private volatile long peakHeap;
+
+    public static void main(String[] args) throws Exception {
+        new SlackLoadHarness().run();
+    }
+
+    void run() throws Exception {
+        final LocalSlackServer server = new LocalSlackServer(serverThreads);
+        server.setLatencyMillis(latencyMillis);
+        server.setErrorRate(errorRate);
+        server.setThrottleRate(throttleRate);
+        final SlackCircuitBreaker circuitBreaker = new SlackCircuitBreaker(
+                SlackCircuitBreaker.DEFAULT_FAILURE_THRESHOLD, SlackCircuitBreaker.DEFAULT_PROBE_INTERVAL_SECONDS);
+        SlackDispatcher dispatcher = new SlackDispatcher(new SlackOutbox(null), dispatcherThreads, queueSize) {
+            @Override
+            SlackService createService(SlackRoute route) {
+                StandardSlackService service = server.createService(route.getTeamDomain(), route.getToken(),
+                        route.getRoom());
+                service.setCircuitBreaker(circuitBreaker);
+                return new TimedService(service);
+            }
+        };
+        ScheduledExecutorService sampler = Executors.newSingleThreadScheduledExecutor();
+        sampler.scheduleAtFixedRate(new Runnable() {
+            public void run() {
+                sample();
+            }
+        }, 0, 100, TimeUnit.MILLISECONDS);
+
+        System.out.println(String.format(Locale.ENGLISH, "%,d builds from %d producers to %d room(s) each; "
+                + "%d dispatcher thread(s), queue %,d; server latency %dms, %.1f%% errors, %.1f%% throttled",
+                builds, producers, rooms, dispatcherThreads, queueSize, latencyMillis, errorRate * 100,
+                throttleRate * 100));
+        long started = System.nanoTime();
+        produce(dispatcher);
+        long dispatched = System.nanoTime();
+        long deadline = dispatched + TimeUnit.SECONDS.toNanos(timeoutSeconds);
+        while (dispatcher.getOutbox().size() > 0 && System.nanoTime() < deadline) {
+            Thread.sleep(50);
+        }
+        long finished = System.nanoTime();
+        sampler.shutdownNow();
+        sample();
+        int undelivered = dispatcher.getOutbox().size();
+        dispatcher.shutdown(5, TimeUnit.SECONDS);
+        server.stop();
+        report(started, dispatched, finished, undelivered, server);
+    }
+
+    private void produce(final SlackDispatcher dispatcher) throws InterruptedException {
+        final AtomicInteger next = new AtomicInteger();
+        final CountDownLatch done = new CountDownLatch(producers);
+        StringBuilder roomList = new StringBuilder("#builds-0");
+        for (int i = 1; i < rooms; i++) {
+            roomList.append(",#builds-").append(i);
+        }
+        final String roomIds = roomList.toString();
+        for (int p = 0; p < producers; p++) {
+            new Thread("Build " + p) {
+                @Override
+                public void run() {
+                    Random random = new Random();
+                    try {
+                        for (int build; (build = next.getAndIncrement()) < builds; ) {
+                            SlackMessage message = compose(build, random);
+                            dispatchedAt.put(message, System.nanoTime());
+                            SlackRoute route = new SlackRoute("team" + build % 4, "token", roomIds);
+                            if (!dispatcher.dispatch(route, message)) {
+                                deferred.incrementAndGet();
+                            }
+                        }
+                    } finally {
+                        done.countDown();
+                    }
+                }
+            }.start();
+        }
+        done.await();
+    }
+
+    /**
+     * A completion message as {@link ActiveNotifier} builds it: status line, open link and commit list.
+     */
+    static SlackMessage compose(int build, Random random) {
+        StringBuilder status = new StringBuilder();
+        ActiveNotifier.MessageBuilder.appendEscaped(status, "folder/job-" + build % 200 + " - #" + build);
+        status.append(" Success after ").append(random.nextInt(600)).append(" sec")
+                .append(" (<http://ci.example.com/job/job-").append(build % 200).append('/').append(build)
+                .append("/|Open>)");
+        CommitSummarizer commits = new CommitSummarizer();
+        for (int i = random.nextInt(30); i >= 0; i--) {
+            List<String> paths = new ArrayList<String>();
+            for (int j = random.nextInt(10); j >= 0; j--) {
+                paths.add("src/main/java/File" + random.nextInt(500) + ".java");
+            }
+            commits.add("Fix <issue> #" + random.nextInt(10000) + " & tidy up", "dev" + random.nextInt(40), paths);
+        }
+        StringBuilder changes = new StringBuilder();
+        ActiveNotifier.MessageBuilder.appendEscaped(changes, commits.summarize());
+        return SlackMessage.of(status.toString(), "good").attach(changes.toString(), "good");
+    }
+
+    private void sample() {
+        int threads = ManagementFactory.getThreadMXBean().getThreadCount();
+        long heap = ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+        if (threads > peakThreads) {
+            peakThreads = threads;
+        }
+        if (heap > peakHeap) {
+            peakHeap = heap;
+        }
+    }
+
+    private void report(long started, long dispatched, long finished, int undelivered, LocalSlackServer server) {
+        long[] sorted;
+        synchronized (latencies) {
+            sorted = new long[latencies.size()];
+            for (int i = 0; i < sorted.length; i++) {
+                sorted[i] = latencies.get(i);
+            }
+        }
+        Arrays.sort(sorted);
+        double seconds = (finished - started) / 1e9;
+        long gcCount = 0;
+        long gcMillis = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            gcCount += Math.max(0, gc.getCollectionCount());
+            gcMillis += Math.max(0, gc.getCollectionTime());
+        }
+        System.out.println(String.format(Locale.ENGLISH, "dispatched in %.2fs (%,d deferred by a full queue), "
+                + "all done in %.2fs", (dispatched - started) / 1e9, deferred.get(), seconds));
+        System.out.println(String.format(Locale.ENGLISH, "delivered %,d room posts, %.1f/s; %,d undelivered",
+                sorted.length, sorted.length / seconds, undelivered));
+        System.out.println(String.format(Locale.ENGLISH, "server saw %,d requests (%,d errors, %,d throttled), "
+                + "%,d KB", server.getRequests(), server.getErrors(), server.getThrottled(),
+                server.getBytesReceived() / 1024));
+        System.out.println(String.format(Locale.ENGLISH, "delivery latency ms: p50 %d, p90 %d, p99 %d, max %d",
+                percentile(sorted, 0.5), percentile(sorted, 0.9), percentile(sorted, 0.99),
+                percentile(sorted, 1.0)));
+        System.out.println(String.format(Locale.ENGLISH, "peak threads %d, peak heap %,d MB, %d GCs taking %,dms",
+                peakThreads, peakHeap / (1024 * 1024), gcCount, gcMillis));
+    }
+
+    static long percentile(long[] sorted, double fraction) {
+        if (sorted.length == 0) {
+            return -1;
+        }
+        int index = (int) Math.ceil(fraction * sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(index, sorted.length - 1))];
+    }
+
+    /**
+     * Notes when each room received its message.
+     */
+    private class TimedService implements SlackService {
+
+        private final SlackService delegate;
+
+        TimedService(SlackService delegate) {
+            this.delegate = delegate;
+        }
+
+        public boolean publish(String message) {
+            return delegate.publish(message);
+        }
+
+        public boolean publish(String message, String color) {
+            return delegate.publish(message, color);
+        }
+
+        public PublishResult deliver(SlackMessage message) {
+            PublishResult result = delegate.deliver(message);
+            Long dispatched = dispatchedAt.get(message);
+            if (dispatched != null) {
+                long millis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - dispatched);
+                for (PublishResult.RoomResult room : result.getRooms()) {
+                    if (room.isSuccess()) {
+                        synchronized (latencies) {
+                            latencies.add(millis);
+                        }
+                    }
+                }
+            }
+            return result;
+        }
+    }
+}
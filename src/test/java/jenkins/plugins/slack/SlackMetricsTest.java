@@ -0,0 +1,104 @@
+package jenkins.plugins.slack;
+
+import org.json.JSONObject;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+public class SlackMetricsTest {
+
+    @Test
+    public void stripedCounterSumsAcrossThreads() throws Exception {
+        final StripedCounter counter = new StripedCounter(8);
+        List<Thread> threads = new ArrayList<Thread>();
+        for (int t = 0; t < 8; t++) {
+            threads.add(new Thread() {
+                @Override
+                public void run() {
+                    for (int i = 0; i < 10000; i++) {
+                        counter.increment();
+                    }
+                }
+            });
+        }
+        for (Thread thread : threads) {
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertEquals(80000, counter.sum());
+    }
+
+    @Test
+    public void histogramPercentilesAreBucketBounds() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        assertEquals(-1, histogram.getPercentile(0.5));
+        for (int i = 0; i < 90; i++) {
+            histogram.record(40);
+        }
+        for (int i = 0; i < 10; i++) {
+            histogram.record(2000);
+        }
+        assertEquals(100, histogram.getCount());
+        assertEquals(90 * 40 + 10 * 2000, histogram.getSumMillis());
+        assertEquals(50, histogram.getPercentile(0.5));
+        assertEquals(2500, histogram.getPercentile(0.95));
+        histogram.record(Long.MAX_VALUE / 2);
+        assertEquals(Long.MAX_VALUE, histogram.getPercentile(1.0));
+    }
+
+    @Test
+    public void recordsPostsResultsAndDeliveries() {
+        final List<String> heard = new ArrayList<String>();
+        SlackMetrics metrics = new SlackMetrics() {
+            @Override
+            List<SlackMetricsListener> getListeners() {
+                return Collections.<SlackMetricsListener>singletonList(new SlackMetricsListener() {
+                    @Override
+                    public void onPost(String teamDomain, String room, int statusCode, long latencyMillis,
+                                       long bytes) {
+                        heard.add(teamDomain + " " + room + " " + statusCode);
+                    }
+                });
+            }
+        };
+        metrics.recordPost("team", "#a", 200, 30, 120);
+        metrics.recordPost("team", "#a", 429, 10, 120);
+        metrics.recordPost("other", "#b", SlackMetrics.NO_RESPONSE, 5000, 0);
+        metrics.recordResult("team", "#a", true);
+        metrics.recordResult("other", "#b", false);
+        metrics.recordDelivered("team", "#a", System.currentTimeMillis() - 1000);
+
+        assertEquals(2, metrics.getPublishLatency("team").getCount());
+        assertEquals(1, metrics.getStatusCount(429));
+        assertEquals(1, metrics.getStatusCount(SlackMetrics.NO_RESPONSE));
+        assertEquals(240, metrics.getBytesSent());
+        assertEquals(1, metrics.getDelivered("team", "#a"));
+        assertEquals(1, metrics.getFailed("other", "#b"));
+        assertEquals(1, metrics.getDeliveryDelay().getCount());
+        assertEquals(3, heard.size());
+        assertEquals("other #b -1", heard.get(2));
+
+        JSONObject json = new JSONObject(metrics.toJSON().toString());
+        assertEquals(1, json.getJSONObject("statusCodes").getLong("200"));
+        assertEquals(1, json.getJSONObject("channels").getJSONObject("other #b").getLong("failed"));
+        assertEquals(5000, json.getJSONObject("publishLatency").getJSONObject("other").getLong("p50"));
+        assertEquals(240, json.getLong("bytesSent"));
+    }
+
+    @Test
+    public void channelsPastTheLimitAreCountedTogether() {
+        SlackMetrics metrics = new SlackMetrics();
+        for (int i = 0; i < SlackMetrics.MAX_CHANNELS + 5; i++) {
+            metrics.recordResult("team", "#room" + i, true);
+        }
+        assertEquals(1, metrics.getDelivered("team", "#room0"));
+        assertEquals(0, metrics.getDelivered("team", "#room" + SlackMetrics.MAX_CHANNELS));
+        assertEquals(5, metrics.getDelivered("team", SlackMetrics.OTHER_CHANNELS));
+    }
+}
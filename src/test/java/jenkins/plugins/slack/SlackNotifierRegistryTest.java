@@ -0,0 +1,79 @@
+package jenkins.plugins.slack;
+
+import hudson.model.AbstractProject;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+public class SlackNotifierRegistryTest {
+
+    @Test
+    public void scansEachProjectOnce() {
+        CountingRegistry registry = new CountingRegistry();
+        SlackNotifier notifier = new SlackNotifierStub("team", "token", "#room", null, null);
+        registry.notifiers.put("with-slack", notifier);
+        assertSame(notifier, registry.getNotifier("with-slack", null));
+        assertSame(notifier, registry.getNotifier("with-slack", null));
+        assertNull(registry.getNotifier("without-slack", null));
+        assertNull(registry.getNotifier("without-slack", null));
+        assertEquals(Arrays.asList("with-slack", "without-slack"), registry.scanned);
+        assertEquals(2, registry.size());
+    }
+
+    @Test
+    public void invalidationRescans() {
+        CountingRegistry registry = new CountingRegistry();
+        assertNull(registry.getNotifier("job", null));
+        SlackNotifier notifier = new SlackNotifierStub("team", "token", "#room", null, null);
+        registry.notifiers.put("job", notifier);
+        registry.invalidate("job");
+        assertSame(notifier, registry.getNotifier("job", null));
+        registry.invalidateAll();
+        assertEquals(0, registry.size());
+    }
+
+    @Test
+    public void invalidatingAMatrixProjectRescansItsConfigurations() {
+        CountingRegistry registry = new CountingRegistry();
+        assertNull(registry.getNotifier("matrix", null));
+        assertNull(registry.getNotifier("matrix/jdk=7", null));
+        assertNull(registry.getNotifier("matrix-other", null));
+        assertNull(registry.getNotifier("matrix-other/jdk=7", null));
+        SlackNotifier notifier = new SlackNotifierStub("team", "token", "#room", null, null);
+        registry.notifiers.put("matrix", notifier);
+        registry.notifiers.put("matrix/jdk=7", notifier);
+        registry.invalidate("matrix");
+        assertEquals(2, registry.size());
+        assertSame(notifier, registry.getNotifier("matrix/jdk=7", null));
+        assertSame(notifier, registry.getNotifier("matrix", null));
+        assertEquals(Arrays.asList("matrix", "matrix/jdk=7", "matrix-other", "matrix-other/jdk=7",
+                "matrix/jdk=7", "matrix"), registry.scanned);
+    }
+
+    private static class CountingRegistry extends SlackNotifierRegistry {
+
+        final Map<String, SlackNotifier> notifiers = new HashMap<String, SlackNotifier>();
+        final List<String> scanned = new ArrayList<String>();
+        private String current;
+
+        @Override
+        SlackNotifier getNotifier(String fullName, AbstractProject<?, ?> project) {
+            current = fullName;
+            return super.getNotifier(fullName, project);
+        }
+
+        @Override
+        SlackNotifier find(AbstractProject<?, ?> project) {
+            scanned.add(current);
+            return notifiers.get(current);
+        }
+    }
+}
@@ -10,6 +10,7 @@ import org.junit.runners.Parameterized;
 
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 
 @RunWith(Parameterized.class)
 public class SlackNotifierTest extends TestCase {
@@ -67,6 +68,13 @@ public class SlackNotifierTest extends TestCase {
             return response;
         }
 
+        public PublishResult deliver(SlackMessage message) {
+            PublishResult.RoomResult room = response
+                    ? PublishResult.RoomResult.delivered("room", 200)
+                    : PublishResult.RoomResult.rejected("room", 500, "stub");
+            return new PublishResult(Collections.singletonList(room));
+        }
+
         public void setResponse(boolean response) {
             this.response = response;
         }
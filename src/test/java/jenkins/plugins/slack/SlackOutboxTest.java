@@ -0,0 +1,186 @@
+package jenkins.plugins.slack;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class SlackOutboxTest {
+
+    private static final SlackRoute ROUTE = new SlackRoute("team", "token", "#builds,@someone");
+
+    @Test
+    public void unacknowledgedNotificationsSurviveRestart() throws IOException {
+        File file = newFile();
+        SlackOutbox outbox = new TestOutbox(file);
+        SlackOutbox.Entry delivered = outbox.add(ROUTE, SlackMessage.of("delivered", "good"));
+        SlackOutbox.Entry pending = outbox.add(ROUTE, SlackMessage.of("status", "danger").attach("changes", "danger"));
+        outbox.ack(delivered.getId());
+        outbox.close();
+
+        SlackOutbox reloaded = new TestOutbox(file);
+        reloaded.load();
+        assertEquals(1, reloaded.size());
+        SlackOutbox.Entry entry = reloaded.getPending().get(0);
+        assertEquals(pending.getId(), entry.getId());
+        assertEquals(ROUTE, entry.getRoute());
+        assertEquals(2, entry.getMessage().getAttachments().size());
+        assertEquals("changes", entry.getMessage().getAttachments().get(1).getText());
+        assertEquals("danger", entry.getMessage().getAttachments().get(1).getColor());
+    }
+
+    @Test
+    public void buildOfStartAndCompletionNoticesIsKept() throws IOException {
+        File file = newFile();
+        SlackOutbox outbox = new TestOutbox(file);
+        outbox.add(ROUTE, SlackMessage.of("Starting", "good").startOf("folder/job#4"));
+        outbox.add(ROUTE, SlackMessage.of("Success", "good").completionOf("folder/job#4"));
+        outbox.close();
+
+        SlackOutbox reloaded = new TestOutbox(file);
+        reloaded.load();
+        SlackMessage start = reloaded.getPending().get(0).getMessage();
+        SlackMessage completion = reloaded.getPending().get(1).getMessage();
+        assertEquals("folder/job#4", start.getStartOf());
+        assertNull(start.getCompletionOf());
+        assertNull(completion.getStartOf());
+        assertEquals("folder/job#4", completion.getCompletionOf());
+    }
+
+    @Test
+    public void truncatedRecordIsSkipped() throws IOException {
+        File file = newFile();
+        SlackOutbox outbox = new TestOutbox(file);
+        outbox.add(ROUTE, SlackMessage.of("kept", "good"));
+        outbox.close();
+        FileOutputStream out = new FileOutputStream(file, true);
+        out.write("{\"op\":\"add\",\"id\":\"cut-sh".getBytes("UTF-8"));
+        out.close();
+
+        SlackOutbox reloaded = new TestOutbox(file);
+        reloaded.load();
+        assertEquals(1, reloaded.size());
+    }
+
+    @Test
+    public void compactionKeepsOnlyPending() throws IOException {
+        File file = newFile();
+        SlackOutbox outbox = new TestOutbox(file);
+        for (int i = 0; i < SlackOutbox.COMPACT_AFTER_ACKS; i++) {
+            outbox.ack(outbox.add(ROUTE, SlackMessage.of("message " + i, "good")).getId());
+        }
+        outbox.add(ROUTE, SlackMessage.of("pending", "good"));
+        outbox.close();
+        long compactedLength = file.length();
+        assertEquals(1, countLines(file));
+        assertEquals(true, compactedLength > 0);
+    }
+
+    @Test
+    public void tokenIsNotWrittenInPlainText() throws IOException {
+        File file = newFile();
+        SlackOutbox outbox = new TestOutbox(file);
+        SlackRoute route = new SlackRoute("team", "xoxb-bot-token", "#builds");
+        outbox.add(route, SlackMessage.of("pending", "good"));
+        outbox.close();
+        assertFalse(read(file).contains("xoxb-bot-token"));
+
+        SlackOutbox reloaded = new TestOutbox(file);
+        reloaded.load();
+        assertEquals(route, reloaded.getPending().get(0).getRoute());
+    }
+
+    @Test
+    public void entryWhoseTokenCannotBeDecryptedIsDropped() throws IOException {
+        File file = newFile();
+        SlackOutbox outbox = new TestOutbox(file);
+        outbox.add(ROUTE, SlackMessage.of("pending", "good"));
+        outbox.close();
+
+        SlackOutbox reloaded = new TestOutbox(file) {
+            @Override
+            String unseal(String sealed) {
+                return null;
+            }
+        };
+        reloaded.load();
+        assertEquals(0, reloaded.size());
+    }
+
+    @Test
+    public void plainTextTokenOfAnOlderJournalIsReadAndEncrypted() throws IOException {
+        File file = newFile();
+        FileOutputStream out = new FileOutputStream(file);
+        out.write(("{\"op\":\"add\",\"id\":\"old\",\"created\":1,\"teamDomain\":\"team\","
+                + "\"token\":\"old-token\",\"room\":\"#builds\",\"attachments\":[{\"text\":\"pending\","
+                + "\"color\":\"good\"}]}\n").getBytes("UTF-8"));
+        out.close();
+
+        SlackOutbox reloaded = new TestOutbox(file);
+        reloaded.load();
+        reloaded.close();
+        assertEquals("old-token", reloaded.getPending().get(0).getRoute().getToken());
+        // loading compacts the journal, which writes the token encrypted
+        assertFalse(read(file).contains("old-token"));
+        assertTrue(read(file).contains("\"id\":\"old\""));
+    }
+
+    /**
+     * Encrypts tokens without the secret key of a running Jenkins.
+     */
+    private static class TestOutbox extends SlackOutbox {
+
+        TestOutbox(File file) {
+            super(file);
+        }
+
+        @Override
+        String seal(String token) {
+            return new StringBuilder(token).reverse().toString();
+        }
+
+        @Override
+        String unseal(String sealed) {
+            return new StringBuilder(sealed).reverse().toString();
+        }
+    }
+
+    private static String read(File file) throws IOException {
+        java.io.BufferedReader reader = new java.io.BufferedReader(new java.io.FileReader(file));
+        try {
+            StringBuilder content = new StringBuilder();
+            String line;
+            while ((line = reader.readLine()) != null) {
+                content.append(line).append('\n');
+            }
+            return content.toString();
+        } finally {
+            reader.close();
+        }
+    }
+
+    private static File newFile() throws IOException {
+        File file = File.createTempFile("slack-outbox", ".log");
+        file.deleteOnExit();
+        return file;
+    }
+
+    private static int countLines(File file) throws IOException {
+        java.io.BufferedReader reader = new java.io.BufferedReader(new java.io.FileReader(file));
+        try {
+            int lines = 0;
+            while (reader.readLine() != null) {
+                lines++;
+            }
+            return lines;
+        } finally {
+            reader.close();
+        }
+    }
+}
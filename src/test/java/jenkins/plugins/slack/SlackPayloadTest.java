@@ -0,0 +1,55 @@
+package jenkins.plugins.slack;
+
+import org.json.JSONObject;
+import org.junit.Test;
+
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class SlackPayloadTest {
+
+    @Test
+    public void encodesChannelAndAttachments() throws Exception {
+        SlackMessage message = SlackMessage.of("Build <b>#1</b> \"done\" & passed\n\t100%", "good");
+        message.attach("Changes:\n- caf\u00e9 \u2603 \ud83d\ude80 [jo+e]", "good");
+        JSONObject json = decode(SlackPayload.of(message).toByteArray("#ops"));
+
+        assertEquals("#ops", json.getString("channel"));
+        assertEquals(2, json.getJSONArray("attachments").length());
+        JSONObject first = json.getJSONArray("attachments").getJSONObject(0);
+        assertEquals("Build <b>#1</b> \"done\" & passed\n\t100%", first.getString("fallback"));
+        assertEquals("good", first.getString("color"));
+        JSONObject field = first.getJSONArray("fields").getJSONObject(0);
+        assertEquals(false, field.getBoolean("short"));
+        assertEquals(first.getString("fallback"), field.getString("value"));
+        assertEquals("Changes:\n- caf\u00e9 \u2603 \ud83d\ude80 [jo+e]",
+                json.getJSONArray("attachments").getJSONObject(1).getString("fallback"));
+    }
+
+    @Test
+    public void matchesUrlEncoder() throws Exception {
+        SlackMessage message = SlackMessage.of("a b*c-d_e.f~g'h(i)!", "warning");
+        String body = new String(SlackPayload.of(message).toByteArray("@jo"), "US-ASCII");
+        String json = "{\"channel\":\"@jo\",\"attachments\":[{\"fallback\":\"a b*c-d_e.f~g'h(i)!\",\"color\":\"warning\","
+                + "\"fields\":[{\"short\":false,\"value\":\"a b*c-d_e.f~g'h(i)!\"}]}]}";
+        assertEquals("payload=" + URLEncoder.encode(json, "UTF-8"), body);
+    }
+
+    @Test
+    public void roomsShareTheEncodedMessage() throws Exception {
+        SlackPayload payload = SlackPayload.of(SlackMessage.of("text", "danger"));
+        assertEquals("#a", decode(payload.toByteArray("#a")).getString("channel"));
+        assertEquals("#b", decode(payload.toByteArray("#b")).getString("channel"));
+        assertEquals(payload.toByteArray("#a").length, payload.forRoom("#a").getContentLength());
+        assertTrue(payload.forRoom("#a").getContentType().startsWith("application/x-www-form-urlencoded"));
+    }
+
+    private static JSONObject decode(byte[] body) throws Exception {
+        String form = new String(body, "US-ASCII");
+        assertTrue(form.startsWith("payload="));
+        return new JSONObject(URLDecoder.decode(form.substring("payload=".length()), "UTF-8"));
+    }
+}
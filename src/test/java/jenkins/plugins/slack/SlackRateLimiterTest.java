@@ -0,0 +1,74 @@
+package jenkins.plugins.slack;
+
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class SlackRateLimiterTest {
+
+    @Test
+    public void burstIsAvailableThenRateApplies() {
+        SlackRateLimiter.Bucket bucket = new SlackRateLimiter.Bucket("team", "token", 60, 3);
+        long now = System.nanoTime();
+        assertEquals(0, bucket.reserve(now));
+        assertEquals(0, bucket.reserve(now));
+        assertEquals(0, bucket.reserve(now));
+        long wait = bucket.reserve(now);
+        assertTrue(wait > 0 && wait <= TimeUnit.SECONDS.toNanos(1));
+        // one token per second at 60 per minute
+        assertEquals(0, bucket.reserve(now + TimeUnit.SECONDS.toNanos(1)));
+    }
+
+    @Test
+    public void throttlingPausesUntilRetryAfter() {
+        SlackRateLimiter.Bucket bucket = new SlackRateLimiter.Bucket("team", "token", 60, 10);
+        long now = System.nanoTime();
+        bucket.pause(now, TimeUnit.SECONDS.toNanos(30));
+        assertEquals(TimeUnit.SECONDS.toNanos(30), bucket.reserve(now));
+        assertTrue(bucket.reserve(now + TimeUnit.SECONDS.toNanos(29)) > 0);
+        assertEquals(0, bucket.reserve(now + TimeUnit.SECONDS.toNanos(31)));
+        assertEquals(1, bucket.status(now).getThrottledCount());
+    }
+
+    @Test
+    public void noBurstBuildsUpDuringAPause() {
+        SlackRateLimiter.Bucket bucket = new SlackRateLimiter.Bucket("team", "token", 60, 10);
+        long now = System.nanoTime();
+        bucket.pause(now, TimeUnit.SECONDS.toNanos(30));
+        long afterPause = now + TimeUnit.SECONDS.toNanos(31);
+        assertEquals(1, bucket.status(afterPause).getAvailableTokens());
+        assertEquals(0, bucket.reserve(afterPause));
+        assertTrue(bucket.reserve(afterPause) > 0);
+    }
+
+    @Test
+    public void statusMasksToken() {
+        SlackRateLimiter limiter = new SlackRateLimiter(60, 10);
+        assertEquals(0, limiter.reserve("team", "secret-token"));
+        assertEquals(1, limiter.getStatus().size());
+        assertEquals("secr****", limiter.getStatus().get(0).getToken());
+        assertEquals(9, limiter.getStatus().get(0).getAvailableTokens());
+    }
+
+    @Test
+    public void reserveSaysHowLongToWaitInsteadOfWaiting() {
+        SlackRateLimiter limiter = new SlackRateLimiter(60, 1);
+        assertEquals(0, limiter.reserve("team", "token"));
+        long started = System.nanoTime();
+        long wait = limiter.reserve("team", "token");
+        assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started) < 500);
+        assertTrue(wait > 0 && wait <= 1000);
+        assertEquals(30000, limiter.throttled("team", "token", 30));
+        assertTrue(limiter.reserve("team", "token") > 29000);
+    }
+
+    @Test
+    public void parseRetryAfter() {
+        assertEquals(12, SlackRateLimiter.parseRetryAfter("12"));
+        assertEquals(-1, SlackRateLimiter.parseRetryAfter(null));
+        assertEquals(-1, SlackRateLimiter.parseRetryAfter("Wed, 21 Oct 2015 07:28:00 GMT"));
+    }
+}
@@ -0,0 +1,56 @@
+package jenkins.plugins.slack;
+
+import hudson.EnvVars;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class SlackRouteCacheTest {
+
+    private final SlackNotifier notifier = new SlackNotifierStub("global", "global-token", "#global", null, null);
+
+    @Test
+    public void fallsBackToGlobalSettings() {
+        SlackRouteCache.Template template = new SlackRouteCache.Template(property(null, null, null, null), notifier, 0);
+        assertFalse(template.needsEnvironment());
+        assertEquals("global", template.getTeamDomain(null));
+        assertEquals("global-token", template.getToken(null));
+        assertEquals("#global", template.getRoom(null));
+        assertEquals("", template.getDirectMessage());
+        assertFalse(template.sendsDirectMessage());
+    }
+
+    @Test
+    public void onlyValuesWithVariablesAreExpanded() {
+        SlackRouteCache.Template template = new SlackRouteCache.Template(
+                property("team", null, "#${BRANCH}", "both"), notifier, 0);
+        assertTrue(template.needsEnvironment());
+        EnvVars env = new EnvVars() {
+            @Override
+            public String expand(String s) {
+                return s.replace("${BRANCH}", "main");
+            }
+        };
+        assertEquals("team", template.getTeamDomain(env));
+        assertEquals("global-token", template.getToken(env));
+        assertEquals("#main", template.getRoom(env));
+        assertTrue(template.sendsDirectMessage());
+    }
+
+    @Test
+    public void templateIsStaleOnceConfigurationChanges() {
+        SlackNotifier.SlackJobProperty property = property("team", null, null, null);
+        SlackRouteCache.Template template = new SlackRouteCache.Template(property, notifier, 3);
+        assertTrue(template.isCurrent(property, notifier, 3));
+        assertFalse(template.isCurrent(property, notifier, 4));
+        assertFalse(template.isCurrent(property("team", null, null, null), notifier, 3));
+    }
+
+    private static SlackNotifier.SlackJobProperty property(String teamDomain, String token, String room,
+                                                           String sendDirectMessage) {
+        return new SlackNotifier.SlackJobProperty(teamDomain, token, room, sendDirectMessage, false, false, false,
+                false, false, false, false, false, false, false, false, null, null);
+    }
+}
@@ -0,0 +1,74 @@
+package jenkins.plugins.slack;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class SlackSuppressorTest {
+
+    private static final String FAILED = "SUCCESS>FAILURE";
+    private static final String FIXED = "FAILURE>SUCCESS";
+
+    @Test
+    public void flappingJobPostsEachTransitionOncePerWindow() {
+        SlackSuppressor suppressor = new SlackSuppressor();
+        long now = 1000000L;
+        assertFalse(suppressor.suppress("job", "#ci", FAILED, "Failure", 600, now));
+        assertFalse(suppressor.suppress("job", "#ci", FIXED, "Back to normal", 600, now + 1000));
+        assertTrue(suppressor.suppress("job", "#ci", FAILED, "Failure", 600, now + 2000));
+        assertTrue(suppressor.suppress("job", "#ci", FIXED, "Back to normal", 600, now + 3000));
+        assertTrue(suppressor.suppress("job", "#ci", FAILED, "Failure", 600, now + 4000));
+        assertEquals(3, suppressor.getSuppressed());
+        assertEquals("Held back 3 similar notifications: Failure (2), Back to normal (1)",
+                suppressor.takeSummary("job", "#ci"));
+        assertNull(suppressor.takeSummary("job", "#ci"));
+    }
+
+    @Test
+    public void keyedByJobAndRoom() {
+        SlackSuppressor suppressor = new SlackSuppressor();
+        assertFalse(suppressor.suppress("job", "#ci", FAILED, "Failure", 600, 0));
+        assertFalse(suppressor.suppress("job", "#team", FAILED, "Failure", 600, 0));
+        assertFalse(suppressor.suppress("other", "#ci", FAILED, "Failure", 600, 0));
+        assertTrue(suppressor.suppress("job", "#ci", FAILED, "Failure", 600, 0));
+        assertNull(suppressor.takeSummary("job", "#team"));
+        assertEquals("Held back 1 similar notification: Failure (1)", suppressor.takeSummary("job", "#ci"));
+    }
+
+    @Test
+    public void postsAgainOnceTheWindowHasPassed() {
+        SlackSuppressor suppressor = new SlackSuppressor();
+        long now = 599000L;
+        assertFalse(suppressor.suppress("job", "#ci", FAILED, "Failure", 600, now));
+        // the next bucket starts at 600000, but the window is measured from the post
+        assertTrue(suppressor.suppress("job", "#ci", FAILED, "Failure", 600, now + 599999));
+        assertFalse(suppressor.suppress("job", "#ci", FAILED, "Failure", 600, now + 600000));
+        assertTrue(suppressor.suppress("job", "#ci", FAILED, "Failure", 600, now + 600001));
+    }
+
+    @Test
+    public void oldBucketsAreDropped() {
+        SlackSuppressor suppressor = new SlackSuppressor();
+        for (int i = 0; i < 100; i++) {
+            suppressor.suppress("job" + i, "#ci", FAILED, "Failure", 60, 0);
+        }
+        assertEquals(100, suppressor.getRemembered());
+        suppressor.suppress("job", "#ci", FAILED, "Failure", 60, 60000);
+        assertEquals(101, suppressor.getRemembered());
+        suppressor.suppress("job", "#ci", FIXED, "Back to normal", 60, 120000);
+        assertEquals(2, suppressor.getRemembered());
+        suppressor.suppress("job", "#ci", FIXED, "Back to normal", 60, 600000);
+        assertEquals(1, suppressor.getRemembered());
+    }
+
+    @Test
+    public void zeroWindowPostsEverything() {
+        SlackSuppressor suppressor = new SlackSuppressor();
+        assertFalse(suppressor.suppress("job", "#ci", FAILED, "Failure", 0, 0));
+        assertFalse(suppressor.suppress("job", "#ci", FAILED, "Failure", 0, 0));
+        assertEquals(0, suppressor.getSuppressed());
+    }
+}
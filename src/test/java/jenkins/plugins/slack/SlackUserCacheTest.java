@@ -0,0 +1,68 @@
+package jenkins.plugins.slack;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+
+public class SlackUserCacheTest {
+
+    @Test
+    public void loadsEachUserOnce() {
+        CountingCache cache = new CountingCache(10);
+        cache.handles.put("alice", "@alice");
+        assertEquals("@alice", cache.getUsername("alice"));
+        assertEquals("@alice", cache.getUsername("alice"));
+        assertEquals("", cache.getUsername("bob"));
+        assertEquals("", cache.getUsername("bob"));
+        assertEquals("", cache.getUsername(null));
+        assertEquals(Arrays.asList("alice", "bob"), cache.loaded);
+    }
+
+    @Test
+    public void savingAUserDropsItsEntry() {
+        CountingCache cache = new CountingCache(10);
+        cache.handles.put("alice", "@alice");
+        cache.getUsername("alice");
+        cache.handles.put("alice", "@alice2");
+        assertEquals("@alice", cache.getUsername("alice"));
+        cache.invalidate("alice");
+        assertEquals("@alice2", cache.getUsername("alice"));
+    }
+
+    @Test
+    public void resolvesInBulkAndEvicts() {
+        CountingCache cache = new CountingCache(2);
+        cache.handles.put("a", "@a");
+        cache.handles.put("c", "@c");
+        cache.getUsername("a");
+        Map<String, String> names = cache.getUsernames(Arrays.asList("c", "a", "b", "c"));
+        assertEquals(Arrays.asList("c", "a", "b"), new ArrayList<String>(names.keySet()));
+        assertEquals("@c", names.get("c"));
+        assertEquals("", names.get("b"));
+        assertEquals(Arrays.asList("a", "c", "b"), cache.loaded);
+        assertEquals(2, cache.size());
+    }
+
+    private static class CountingCache extends SlackUserCache {
+
+        final Map<String, String> handles = new HashMap<String, String>();
+        final List<String> loaded = new ArrayList<String>();
+
+        CountingCache(int capacity) {
+            super(capacity);
+        }
+
+        @Override
+        String load(String userId) {
+            loaded.add(userId);
+            String handle = handles.get(userId);
+            return handle != null ? handle : "";
+        }
+    }
+}
@@ -4,6 +4,12 @@ import jenkins.plugins.slack.StandardSlackService;
 import org.junit.Before;
 import org.junit.Test;
 
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
 public class StandardSlackServiceTest {
 
     /**
@@ -33,4 +39,105 @@ public class StandardSlackServiceTest {
         StandardSlackService service = new StandardSlackService("tinyspeck", "token", "#general");
         service.publish("message");
     }
+
+    /**
+     * A failing room should be reported on its own and not stop the others from being attempted.
+     */
+    @Test
+    public void publishToSeveralRoomsReportsEachRoom() {
+        StandardSlackService service = new StandardSlackService("foo", "token", "#ops,#team-a;@oncall");
+        service.setHost("hostvaluethatwillcausepublishtofail");
+        PublishResult result = service.deliver(SlackMessage.of("message", "good"));
+        assertFalse(result.isSuccess());
+        assertEquals(3, result.getRooms().size());
+        assertEquals("#ops", result.getRooms().get(0).getRoom());
+        assertEquals("#team-a", result.getRooms().get(1).getRoom());
+        assertEquals("@oncall", result.getRooms().get(2).getRoom());
+        assertEquals(3, result.getFailures().size());
+    }
+
+    /**
+     * An error status is a failure even when Slack sends no body to go with it.
+     */
+    @Test
+    public void errorWithoutBodyFailsItsRoom() throws Exception {
+        LocalSlackServer server = new LocalSlackServer(2);
+        try {
+            server.setErrorRate(1);
+            server.setErrorResponse(404, "");
+            PublishResult result = server.createService("team", "token", "#ops,#team-a").deliver(
+                    SlackMessage.of("message", "good"));
+            assertFalse(result.isSuccess());
+            assertEquals(2, result.getFailures().size());
+            for (PublishResult.RoomResult room : result.getRooms()) {
+                assertFalse(room.isSuccess());
+                assertEquals(404, room.getStatusCode());
+                assertEquals("HTTP 404", room.getError());
+            }
+        } finally {
+            server.stop();
+        }
+    }
+
+    /**
+     * A throttled post is handed back with the time to wait rather than waited out on the calling thread.
+     */
+    @Test
+    public void throttledPostIsHandedBack() throws Exception {
+        LocalSlackServer server = new LocalSlackServer(2);
+        try {
+            server.setThrottleRate(1);
+            StandardSlackService service = server.createService("team", "token", "#ops");
+            SlackRateLimiter limiter = new SlackRateLimiter(60, 10);
+            service.setRateLimiter(limiter);
+            long started = System.nanoTime();
+            PublishResult.RoomResult room = service.deliver(SlackMessage.of("message", "good")).getRooms().get(0);
+            assertTrue(room.isThrottled());
+            assertEquals(429, room.getStatusCode());
+            assertEquals(0, room.getRetryAfterMillis());
+            assertTrue(SlackDispatcher.isRetryable(room));
+
+            // the pause leaves no tokens, so the next post is not even sent
+            room = service.deliver(SlackMessage.of("message", "good")).getRooms().get(0);
+            assertTrue(room.isThrottled());
+            assertTrue(room.getRetryAfterMillis() > 0);
+            assertEquals(1, server.getRequests());
+            assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started) < 1000);
+        } finally {
+            server.stop();
+        }
+    }
+
+    /**
+     * The test connection button calls publish() directly; a momentarily empty bucket must not make it fail.
+     */
+    @Test
+    public void publishWaitsOutAShortThrottle() throws Exception {
+        LocalSlackServer server = new LocalSlackServer(2);
+        try {
+            StandardSlackService service = server.createService("team", "token", "#ops");
+            // one post per 100ms, no burst
+            SlackRateLimiter limiter = new SlackRateLimiter(600, 1);
+            service.setRateLimiter(limiter);
+            assertTrue(service.publish("first", "good"));
+            assertTrue(service.publish("second", "good"));
+            assertEquals(2, server.getRequests());
+
+            // a pause longer than publish() is willing to wait fails without posting
+            limiter.throttled("team", "token", 60);
+            long started = System.nanoTime();
+            assertFalse(service.publish("third", "good"));
+            assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started) < 1000);
+            assertEquals(2, server.getRequests());
+        } finally {
+            server.stop();
+        }
+    }
+
+    @Test
+    public void rejectedWithoutResponseIsAFailure() {
+        PublishResult.RoomResult room = PublishResult.RoomResult.rejected("#ops", 500, null);
+        assertFalse(room.isSuccess());
+        assertEquals("HTTP 500", room.getError());
+    }
 }
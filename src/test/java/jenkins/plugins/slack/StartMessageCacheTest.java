@@ -0,0 +1,34 @@
+package jenkins.plugins.slack;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class StartMessageCacheTest {
+
+    @Test
+    public void keysByTokenRoomAndBuild() {
+        StartMessageCache cache = new StartMessageCache(10);
+        cache.put("xoxb-1", "#ci", "job#7", new StartMessageCache.Posted("C1", "1.0001"));
+        assertEquals("1.0001", cache.get("xoxb-1", "#ci", "job#7").getTs());
+        assertEquals("C1", cache.get("xoxb-1", "#ci", "job#7").getChannel());
+        assertNull(cache.get("xoxb-2", "#ci", "job#7"));
+        assertNull(cache.get("xoxb-1", "#team", "job#7"));
+        assertNull(cache.get("xoxb-1", "#ci", "job#8"));
+        cache.remove("xoxb-1", "#ci", "job#7");
+        assertNull(cache.get("xoxb-1", "#ci", "job#7"));
+    }
+
+    @Test
+    public void evictsLeastRecentlyUsed() {
+        StartMessageCache cache = new StartMessageCache(2);
+        cache.put("t", "#ci", "job#1", new StartMessageCache.Posted("C1", "1"));
+        cache.put("t", "#ci", "job#2", new StartMessageCache.Posted("C1", "2"));
+        cache.get("t", "#ci", "job#1");
+        cache.put("t", "#ci", "job#3", new StartMessageCache.Posted("C1", "3"));
+        assertEquals(2, cache.size());
+        assertEquals("1", cache.get("t", "#ci", "job#1").getTs());
+        assertNull(cache.get("t", "#ci", "job#2"));
+    }
+}
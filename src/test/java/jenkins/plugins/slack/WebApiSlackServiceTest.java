@@ -0,0 +1,106 @@
+package jenkins.plugins.slack;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class WebApiSlackServiceTest {
+
+    private LocalSlackServer server;
+
+    @Before
+    public void startServer() throws Exception {
+        server = new LocalSlackServer(2);
+    }
+
+    @After
+    public void stopServer() {
+        server.stop();
+    }
+
+    @Test
+    public void completionReplacesTheStartNotice() {
+        WebApiSlackService service = server.createWebApiService("team", "xoxb-token", "#ci");
+        assertTrue(service.deliver(SlackMessage.of("job - #1 Starting...", "good").startOf("job#1")).isSuccess());
+        assertTrue(service.deliver(SlackMessage.of("job - #1 Success", "good").completionOf("job#1")).isSuccess());
+        assertEquals(Collections.singletonList("job - #1 Success"), server.getMessages());
+        assertEquals(1, server.getUpdates());
+    }
+
+    @Test
+    public void eachRoomHasItsOwnStartNotice() {
+        WebApiSlackService service = server.createWebApiService("team", "xoxb-token", "#ci,#team");
+        service.deliver(SlackMessage.of("Starting", "good").startOf("job#1"));
+        service.deliver(SlackMessage.of("Failure", "danger").completionOf("job#1"));
+        assertEquals(Arrays.asList("Failure", "Failure"), server.getMessages());
+        assertEquals(2, server.getUpdates());
+    }
+
+    @Test
+    public void completionWithoutStartNoticeIsPosted() {
+        WebApiSlackService service = server.createWebApiService("team", "xoxb-token", "#ci");
+        service.deliver(SlackMessage.of("job - #1 Starting...", "good").startOf("job#1"));
+        service.deliver(SlackMessage.of("job - #2 Success", "good").completionOf("job#2"));
+        assertEquals(Arrays.asList("job - #1 Starting...", "job - #2 Success"), server.getMessages());
+        assertEquals(0, server.getUpdates());
+    }
+
+    @Test
+    public void deletedStartNoticeIsPostedAgain() {
+        WebApiSlackService service = server.createWebApiService("team", "xoxb-token", "#ci");
+        service.deliver(SlackMessage.of("Starting", "good").startOf("job#1"));
+        server.deleteMessages();
+        assertTrue(service.deliver(SlackMessage.of("Success", "good").completionOf("job#1")).isSuccess());
+        assertEquals(Collections.singletonList("Success"), server.getMessages());
+    }
+
+    @Test
+    public void refusedRequestIsNotRetryable() {
+        server.setApiToken("xoxb-right");
+        WebApiSlackService service = server.createWebApiService("team", "xoxb-wrong", "#ci");
+        PublishResult result = service.deliver(SlackMessage.of("Success", "good"));
+        assertFalse(result.isSuccess());
+        PublishResult.RoomResult room = result.getRooms().get(0);
+        assertEquals("invalid_auth", room.getError());
+        assertFalse(SlackDispatcher.isRetryable(room));
+    }
+
+    /**
+     * A revoked or wrong token is answered with a 200, but must trip the circuit breaker as a 401 from the webhook
+     * does.
+     */
+    @Test
+    public void refusedTokenTripsTheCircuitBreaker() {
+        server.setApiToken("xoxb-right");
+        WebApiSlackService service = server.createWebApiService("team", "xoxb-wrong", "#ci");
+        SlackCircuitBreaker circuitBreaker = new SlackCircuitBreaker(2, 60);
+        service.setCircuitBreaker(circuitBreaker);
+        service.deliver(SlackMessage.of("Success", "good"));
+        assertTrue(circuitBreaker.allowRequest("team", "xoxb-wrong"));
+        service.deliver(SlackMessage.of("Success", "good"));
+        assertFalse(circuitBreaker.allowRequest("team", "xoxb-wrong"));
+        long requests = server.getRequests();
+        assertFalse(service.deliver(SlackMessage.of("Success", "good")).isSuccess());
+        assertEquals(requests, server.getRequests());
+    }
+
+    @Test
+    public void onlyAuthenticationErrorsCountAgainstTheCircuitBreaker() {
+        assertFalse(WebApiSlackService.isApiFailure(PublishResult.RoomResult.rejected("#ci", 200, "is_archived")));
+        assertTrue(WebApiSlackService.isApiFailure(PublishResult.RoomResult.rejected("#ci", 200, "token_revoked")));
+        assertFalse(WebApiSlackService.isApiFailure(PublishResult.RoomResult.delivered("#ci", 200)));
+    }
+
+    @Test
+    public void botTokensUseTheWebApi() {
+        assertTrue(new SlackRoute("team", "xoxb-123", "#ci").createService() instanceof WebApiSlackService);
+        assertTrue(new SlackRoute("team", "abc123", "#ci").createService() instanceof StandardSlackService);
+    }
+}
@@ -0,0 +1,101 @@
+package jenkins.plugins.slack.benchmark;
+
+import jenkins.plugins.slack.ActiveNotifier;
+import jenkins.plugins.slack.CommitSummarizer;
+import jenkins.plugins.slack.DistinctPathCounter;
+import org.apache.commons.lang.StringUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * What {@code getCommitList} and {@code getChanges} do with a change set, over synthetic change sets: the
+ * {@code HashSet} joins they used to do, against {@link CommitSummarizer} and {@link DistinctPathCounter}. Builds and
+ * change sets need a running Jenkins, so commits are plain arrays here.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ChangesBenchmark {
+
+    @Param({"10", "1000", "100000"})
+    public int commits;
+
+    private String[] messages;
+    private String[] authors;
+    private List<String>[] paths;
+
+    @Setup
+    @SuppressWarnings("unchecked")
+    public void setUp() {
+        messages = new String[commits];
+        authors = new String[commits];
+        paths = new List[commits];
+        for (int i = 0; i < commits; i++) {
+            // every tenth message repeats, as merges and reverts do
+            messages[i] = i % 10 == 0 ? "Merge branch 'main'" : "Fix <NPE> in module " + i % 50 + " (#" + i + ")";
+            authors[i] = "dev" + i % 37;
+            paths[i] = Arrays.asList("modules/m" + i % 50 + "/src/Main.java",
+                    "modules/m" + i % 50 + "/src/File" + i + ".java", "pom.xml");
+        }
+    }
+
+    @Benchmark
+    public String hashSetCommitList() {
+        Set<String> lines = new HashSet<String>();
+        for (int i = 0; i < commits; i++) {
+            lines.add(messages[i] + " [" + authors[i] + "]");
+        }
+        StringBuilder message = new StringBuilder();
+        ActiveNotifier.MessageBuilder.appendEscaped(message, "Changes:\n- " + StringUtils.join(lines, "\n- "));
+        return message.toString();
+    }
+
+    @Benchmark
+    public String summarizedCommitList() {
+        CommitSummarizer summarizer = new CommitSummarizer();
+        for (int i = 0; i < commits; i++) {
+            summarizer.add(messages[i], authors[i], paths[i]);
+        }
+        StringBuilder message = new StringBuilder();
+        ActiveNotifier.MessageBuilder.appendEscaped(message, summarizer.summarize());
+        return message.toString();
+    }
+
+    @Benchmark
+    public int hashSetFileCount() {
+        Set<String> files = new HashSet<String>();
+        for (List<String> affected : paths) {
+            files.addAll(affected);
+        }
+        return files.size();
+    }
+
+    @Benchmark
+    public int distinctPathCount() {
+        DistinctPathCounter files = new DistinctPathCounter();
+        for (List<String> affected : paths) {
+            for (String path : affected) {
+                files.add(path);
+            }
+        }
+        return files.getCount();
+    }
+}
@@ -0,0 +1,69 @@
+package jenkins.plugins.slack.benchmark;
+
+import jenkins.plugins.slack.ActiveNotifier;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Building a commit list message: the chained {@code String.replace} escaping into a {@code StringBuffer} that
+ * {@code MessageBuilder} used to do, against the single-pass escaper appending into a {@code StringBuilder}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EscapeBenchmark {
+
+    @Param({"10", "1000"})
+    public int commits;
+
+    // how many fragments contain a character that must be escaped
+    @Param({"none", "some"})
+    public String special;
+
+    private String[] fragments;
+
+    @Setup
+    public void setUp() {
+        fragments = new String[commits];
+        for (int i = 0; i < commits; i++) {
+            fragments[i] = "some".equals(special) && i % 3 == 0
+                    ? "Fix <NPE> in parser & lexer (#" + i + ") [dev" + i % 7 + "]"
+                    : "Fix NPE in parser and lexer (#" + i + ") [dev" + i % 7 + "]";
+        }
+    }
+
+    @Benchmark
+    public String chainedReplace() {
+        StringBuffer message = new StringBuffer();
+        for (String fragment : fragments) {
+            String escaped = fragment.replace("&", "&amp;");
+            escaped = escaped.replace("<", "&lt;");
+            escaped = escaped.replace(">", "&gt;");
+            message.append(escaped).append('\n');
+        }
+        return message.toString();
+    }
+
+    @Benchmark
+    public String singlePass() {
+        StringBuilder message = new StringBuilder();
+        for (String fragment : fragments) {
+            ActiveNotifier.MessageBuilder.appendEscaped(message, fragment).append('\n');
+        }
+        return message.toString();
+    }
+}
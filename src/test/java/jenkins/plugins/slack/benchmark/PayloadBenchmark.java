@@ -0,0 +1,90 @@
+package jenkins.plugins.slack.benchmark;
+
+import jenkins.plugins.slack.SlackMessage;
+import jenkins.plugins.slack.SlackPayload;
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.UnsupportedEncodingException;
+import java.net.URLEncoder;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Encoding one message for several rooms: the org.json tree plus form encoding that was used per room, against
+ * {@link SlackPayload}. Run with the gc profiler to compare allocation.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PayloadBenchmark {
+
+    @Param({"1", "4"})
+    public int rooms;
+
+    @Param({"5", "500"})
+    public int commits;
+
+    private SlackMessage message;
+    private String[] roomIds;
+
+    @Setup
+    public void setUp() {
+        StringBuilder changes = new StringBuilder("Changes:");
+        for (int i = 0; i < commits; i++) {
+            changes.append("\n- Fix \"flaky\" test <#").append(i).append("> & tidy up [dev").append(i % 7).append(']');
+        }
+        message = SlackMessage.of("my-job - #42 Back to normal after 3 min 12 sec (<http://ci/job/my-job/42/|Open>)",
+                "good");
+        message.attach(changes.toString(), "good");
+        roomIds = new String[rooms];
+        for (int i = 0; i < rooms; i++) {
+            roomIds[i] = "#room-" + i;
+        }
+    }
+
+    @Benchmark
+    public void jsonTree(Blackhole blackhole) throws UnsupportedEncodingException {
+        for (String roomId : roomIds) {
+            JSONArray attachments = new JSONArray();
+            for (SlackMessage.Attachment part : message.getAttachments()) {
+                JSONObject field = new JSONObject();
+                field.put("short", false);
+                field.put("value", part.getText());
+                JSONArray fields = new JSONArray();
+                fields.put(field);
+                JSONObject attachment = new JSONObject();
+                attachment.put("fallback", part.getText());
+                attachment.put("color", part.getColor());
+                attachment.put("fields", fields);
+                attachments.put(attachment);
+            }
+            JSONObject json = new JSONObject();
+            json.put("channel", roomId);
+            json.put("attachments", attachments);
+            blackhole.consume(("payload=" + URLEncoder.encode(json.toString(), "UTF-8")).getBytes("US-ASCII"));
+        }
+    }
+
+    @Benchmark
+    public void streamed(Blackhole blackhole) {
+        SlackPayload payload = SlackPayload.of(message);
+        for (String roomId : roomIds) {
+            blackhole.consume(payload.forRoom(roomId));
+        }
+    }
+}
@@ -0,0 +1,71 @@
+package jenkins.plugins.slack.benchmark;
+
+import jenkins.plugins.slack.LocalSlackServer;
+import jenkins.plugins.slack.PublishResult;
+import jenkins.plugins.slack.SlackMessage;
+import jenkins.plugins.slack.StandardSlackService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The whole publish path of {@link StandardSlackService}: payload encoding, rate limiting, the pooled HTTP
+ * connection and the post to each room, to a {@link LocalSlackServer} that answers at once.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PublishBenchmark {
+
+    @Param({"1", "4"})
+    public int rooms;
+
+    private LocalSlackServer server;
+    private StandardSlackService service;
+    private SlackMessage message;
+
+    @Setup
+    public void setUp() throws IOException {
+        server = new LocalSlackServer(4);
+        StringBuilder roomIds = new StringBuilder("#room-0");
+        for (int i = 1; i < rooms; i++) {
+            roomIds.append(",#room-").append(i);
+        }
+        service = server.createService("bench", "token", roomIds.toString());
+        StringBuilder changes = new StringBuilder("Changes:");
+        for (int i = 0; i < 20; i++) {
+            changes.append("\n- Fix flaky test #").append(i).append(" [dev").append(i % 7).append(']');
+        }
+        message = SlackMessage.of("my-job - #42 Success after 3 min 12 sec (<http://ci/job/my-job/42/|Open>)", "good");
+        message.attach(changes.toString(), "good");
+    }
+
+    @TearDown
+    public void tearDown() {
+        server.stop();
+    }
+
+    @Benchmark
+    public PublishResult publish() {
+        PublishResult result = service.deliver(message);
+        if (!result.isSuccess()) {
+            throw new IllegalStateException("Publish to the local server failed: " + result);
+        }
+        return result;
+    }
+}